@@ -0,0 +1,94 @@
+package com.bosonshiggs.physicsengine.benchmarks;
+
+import com.bosonshiggs.physicsengine.helpers.BodyStore;
+import com.bosonshiggs.physicsengine.helpers.PhysicsObject;
+import com.bosonshiggs.physicsengine.helpers.Vector2D;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caminho de integração por corpo (estado anterior, gravidade e update()),
+ * que não deve alocar nada por passo. Rode com "-prof gc": gc.alloc.rate.norm
+ * precisa ficar em 0 B/op.
+ *
+ * main() faz a mesma verificação sem o JMH, contando os bytes alocados pela
+ * thread, e termina com código 1 se o passo voltar a alocar.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+    private static final float STEP = 1.0f / 60.0f;
+    private static final int CHECK_BODIES = 1000;
+    private static final int CHECK_WARMUP_STEPS = 2000;
+    private static final int CHECK_STEPS = 1000;
+
+    @Param({"1000"})
+    public int bodies;
+
+    private PhysicsObject[] objects;
+    private final Vector2D gravity = new Vector2D(0, 9.8f);
+
+    @Setup
+    public void setUp() {
+        objects = BodyLayout.UNIFORM.createObjects(new BodyStore(bodies), bodies);
+        // Parte dos corpos oscila, o caminho que antes criava vetores a cada passo
+        for (int i = 0; i < objects.length; i++) {
+            if (i % 4 == 0) {
+                objects[i].startOscillatingHorizontally(20.0f, 1000);
+            } else if (i % 4 == 1) {
+                objects[i].startOscillatingVertically(20.0f, 1000);
+            }
+        }
+    }
+
+    @Benchmark
+    public PhysicsObject[] integrate() {
+        for (PhysicsObject obj : objects) {
+            obj.savePreviousState();
+            obj.applyForce(gravity);
+            obj.update(STEP);
+        }
+        return objects;
+    }
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        AllocationBenchmark benchmark = new AllocationBenchmark();
+        benchmark.bodies = CHECK_BODIES;
+        benchmark.setUp();
+        for (int i = 0; i < CHECK_WARMUP_STEPS; i++) {
+            benchmark.integrate();
+        }
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < CHECK_STEPS; i++) {
+            benchmark.integrate();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        double perStep = allocated / (double) CHECK_STEPS;
+        System.out.println(String.format("%d bodies: %.1f bytes allocated per step", CHECK_BODIES, perStep));
+        if (allocated > 0) {
+            System.exit(1);
+        }
+    }
+}
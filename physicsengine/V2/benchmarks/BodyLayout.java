@@ -0,0 +1,82 @@
+package com.bosonshiggs.physicsengine.benchmarks;
+
+import com.bosonshiggs.physicsengine.helpers.BodyStore;
+import com.bosonshiggs.physicsengine.helpers.PhysicsObject;
+
+import java.util.Random;
+
+/**
+ * Distribuições de corpos usadas pelos benchmarks. A semente é fixa, então cada
+ * medição recebe exatamente a mesma cena, antes e depois de uma mudança na engine.
+ *
+ * A área cresce com a quantidade de corpos, mantendo a densidade média constante;
+ * o que muda entre as distribuições é como os corpos se agrupam nela.
+ */
+public enum BodyLayout {
+    // Espalhados por todo o quadrado
+    UNIFORM,
+    // Concentrados em poucos aglomerados, com muitos pares candidatos em cada um
+    CLUSTERED,
+    // Enfileirados em uma faixa horizontal fina, o pior caso para a quad-tree
+    LINE;
+
+    public static final float BODY_SIZE = 8.0f;
+    private static final float SPACING = 24.0f; // Lado médio da área ocupada por corpo
+    private static final int CLUSTERS = 16;
+    private static final long SEED = 42L;
+
+    // Lado do quadrado que contém os corpos
+    public static float worldSize(int count) {
+        return Math.max(256.0f, (float) Math.ceil(Math.sqrt(count)) * SPACING);
+    }
+
+    /**
+     * Gera as posições (canto superior esquerdo) dos corpos.
+     *
+     * @return Vetor intercalado {x0, y0, x1, y1, ...}.
+     */
+    public float[] positions(int count) {
+        float size = worldSize(count);
+        float max = size - BODY_SIZE;
+        Random random = new Random(SEED);
+        float[] result = new float[count * 2];
+
+        float[] centers = new float[CLUSTERS * 2];
+        for (int c = 0; c < centers.length; c++) {
+            centers[c] = max * (0.1f + 0.8f * random.nextFloat());
+        }
+        float spread = size / 32.0f;
+
+        for (int i = 0; i < count; i++) {
+            float x;
+            float y;
+            if (this == UNIFORM) {
+                x = random.nextFloat() * max;
+                y = random.nextFloat() * max;
+            } else if (this == CLUSTERED) {
+                int c = random.nextInt(CLUSTERS) * 2;
+                x = centers[c] + (float) random.nextGaussian() * spread;
+                y = centers[c + 1] + (float) random.nextGaussian() * spread;
+            } else {
+                x = random.nextFloat() * max;
+                y = size / 2.0f + random.nextFloat() * BODY_SIZE;
+            }
+            result[i * 2] = Math.max(0.0f, Math.min(max, x));
+            result[i * 2 + 1] = Math.max(0.0f, Math.min(max, y));
+        }
+        return result;
+    }
+
+    // Cria os corpos, com IDs 1..count, cada um com uma velocidade pequena para que update() mova todos
+    public PhysicsObject[] createObjects(BodyStore store, int count) {
+        float[] positions = positions(count);
+        Random random = new Random(SEED + 1);
+        PhysicsObject[] objects = new PhysicsObject[count];
+        for (int i = 0; i < count; i++) {
+            PhysicsObject obj = store.add(i + 1, positions[i * 2], positions[i * 2 + 1], BODY_SIZE, BODY_SIZE, 1.0f, 0.1f);
+            obj.setVelocity(random.nextFloat() * 20.0f - 10.0f, random.nextFloat() * 20.0f - 10.0f);
+            objects[i] = obj;
+        }
+        return objects;
+    }
+}
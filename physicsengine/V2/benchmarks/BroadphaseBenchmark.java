@@ -0,0 +1,132 @@
+package com.bosonshiggs.physicsengine.benchmarks;
+
+import com.bosonshiggs.physicsengine.helpers.BodyStore;
+import com.bosonshiggs.physicsengine.helpers.Broadphase;
+import com.bosonshiggs.physicsengine.helpers.DynamicAABBTree;
+import com.bosonshiggs.physicsengine.helpers.PhysicsObject;
+import com.bosonshiggs.physicsengine.helpers.QuadTree;
+import com.bosonshiggs.physicsengine.helpers.SpatialHashGrid;
+import com.bosonshiggs.physicsengine.helpers.SweepAndPrune;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara as fases amplas em um passo: um terço dos corpos se move um pouco, a
+ * estrutura é atualizada só para esses corpos e todos os pares candidatos são
+ * percorridos, como no World. No SweepAndPrune os candidatos já são os pares
+ * sobrepostos, contados uma vez; nas outras estruturas cada par aparece a partir
+ * dos dois corpos.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadphaseBenchmark {
+
+    @Param({"QuadTree", "SweepAndPrune", "SpatialHash", "AABBTree"})
+    public String broadphase;
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int bodies;
+
+    @Param({"UNIFORM", "CLUSTERED", "LINE"})
+    public BodyLayout layout;
+
+    private PhysicsObject[] objects;
+    private float[] start;
+    private Broadphase structure;
+    private float worldSize;
+    private final List<PhysicsObject> candidates = new ArrayList<>();
+    private Random random;
+    private int step;
+
+    @Setup
+    public void setUp() {
+        objects = layout.createObjects(new BodyStore(bodies), bodies);
+        start = layout.positions(bodies);
+        worldSize = BodyLayout.worldSize(bodies);
+        structure = create();
+        for (PhysicsObject obj : objects) {
+            structure.insert(obj);
+        }
+    }
+
+    // Cada iteração recomeça da cena inicial, com a mesma sequência de movimentos
+    @Setup(Level.Iteration)
+    public void resetScene() {
+        for (int i = 0; i < objects.length; i++) {
+            objects[i].setPosition(start[i * 2], start[i * 2 + 1]);
+            structure.update(objects[i]);
+        }
+        random = new Random(42L);
+        step = 0;
+    }
+
+    // Retorna quantos pares candidatos foram testados
+    @Benchmark
+    public int step() {
+        for (int i = step % 3; i < objects.length; i += 3) {
+            PhysicsObject obj = objects[i];
+            obj.setPosition(clamp(obj.getX() + random.nextFloat() * 4 - 2), clamp(obj.getY() + random.nextFloat() * 4 - 2));
+            structure.update(obj);
+        }
+        step++;
+
+        int tested = 0;
+        if (structure instanceof SweepAndPrune) {
+            SweepAndPrune sap = (SweepAndPrune) structure;
+            sap.updatePairs();
+            for (int i = 0; i < sap.getPairCount(); i++) {
+                sap.getPairA(i).collidesWith(sap.getPairB(i));
+                tested++;
+            }
+            return tested;
+        }
+
+        for (PhysicsObject obj : objects) {
+            candidates.clear();
+            structure.retrieve(candidates, obj);
+            for (int j = 0; j < candidates.size(); j++) {
+                PhysicsObject other = candidates.get(j);
+                if (other != obj) {
+                    obj.collidesWith(other);
+                    tested++;
+                }
+            }
+        }
+        return tested;
+    }
+
+    private Broadphase create() {
+        if (broadphase.equals("SweepAndPrune")) {
+            return new SweepAndPrune();
+        } else if (broadphase.equals("SpatialHash")) {
+            return new SpatialHashGrid(BodyLayout.BODY_SIZE * 2);
+        } else if (broadphase.equals("AABBTree")) {
+            return new DynamicAABBTree(BodyLayout.BODY_SIZE / 2);
+        }
+        return new QuadTree(0, new QuadTree.Rect(0, 0, worldSize, worldSize));
+    }
+
+    private float clamp(float value) {
+        return Math.max(0, Math.min(worldSize - BodyLayout.BODY_SIZE, value));
+    }
+}
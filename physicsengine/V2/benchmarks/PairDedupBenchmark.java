@@ -0,0 +1,107 @@
+package com.bosonshiggs.physicsengine.benchmarks;
+
+import com.bosonshiggs.physicsengine.helpers.BodyStore;
+import com.bosonshiggs.physicsengine.helpers.LongHashSet;
+import com.bosonshiggs.physicsengine.helpers.PhysicsObject;
+import com.bosonshiggs.physicsengine.helpers.QuadTree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deduplicação dos pares candidatos vindos da fase ampla. Cada par aparece duas
+ * vezes (uma por corpo), como na fase estreita do World. A versão com
+ * HashSet<Long> fica como referência para o custo das chaves encaixotadas.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+// Com 50 mil corpos a versão encaixotada guarda dezenas de milhões de chaves
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PairDedupBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int bodies;
+
+    @Param({"UNIFORM", "CLUSTERED", "LINE"})
+    public BodyLayout layout;
+
+    // Pares candidatos, na ordem em que a fase ampla os entrega
+    private int[] firstIds;
+    private int[] secondIds;
+    private final LongHashSet pairs = new LongHashSet(256);
+    private final Set<Long> boxedPairs = new HashSet<>();
+
+    @Setup
+    public void setUp() {
+        PhysicsObject[] objects = layout.createObjects(new BodyStore(bodies), bodies);
+        float size = BodyLayout.worldSize(bodies);
+        QuadTree tree = new QuadTree(0, new QuadTree.Rect(0, 0, size, size));
+        for (PhysicsObject obj : objects) {
+            tree.insert(obj);
+        }
+
+        List<PhysicsObject> candidates = new ArrayList<>();
+        firstIds = new int[bodies];
+        secondIds = new int[bodies];
+        int count = 0;
+        for (PhysicsObject obj : objects) {
+            candidates.clear();
+            tree.retrieve(candidates, obj);
+            for (PhysicsObject other : candidates) {
+                if (other == obj) continue;
+                if (count == firstIds.length) {
+                    firstIds = Arrays.copyOf(firstIds, count * 2);
+                    secondIds = Arrays.copyOf(secondIds, count * 2);
+                }
+                firstIds[count] = obj.getId();
+                secondIds[count] = other.getId();
+                count++;
+            }
+        }
+        firstIds = Arrays.copyOf(firstIds, count);
+        secondIds = Arrays.copyOf(secondIds, count);
+    }
+
+    @Benchmark
+    public int longHashSet() {
+        pairs.clear();
+        int unique = 0;
+        for (int i = 0; i < firstIds.length; i++) {
+            if (pairs.add(LongHashSet.pairKey(firstIds[i], secondIds[i]))) {
+                unique++;
+            }
+        }
+        return unique;
+    }
+
+    @Benchmark
+    public int boxedHashSet() {
+        boxedPairs.clear();
+        int unique = 0;
+        for (int i = 0; i < firstIds.length; i++) {
+            if (boxedPairs.add(LongHashSet.pairKey(firstIds[i], secondIds[i]))) {
+                unique++;
+            }
+        }
+        return unique;
+    }
+}
@@ -0,0 +1,84 @@
+package com.bosonshiggs.physicsengine.benchmarks;
+
+import com.bosonshiggs.physicsengine.helpers.BodyStore;
+import com.bosonshiggs.physicsengine.helpers.PhysicsObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Integração de um passo e testes de colisão entre pares, sobre todos os corpos.
+ * Os pares testados são os vizinhos na ordem de criação, então a fração de pares
+ * que colidem depende da distribuição.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhysicsObjectBenchmark {
+    private static final float STEP = 1.0f / 60.0f;
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int bodies;
+
+    @Param({"UNIFORM", "CLUSTERED", "LINE"})
+    public BodyLayout layout;
+
+    private PhysicsObject[] objects;
+    private float[] start;
+
+    @Setup
+    public void setUp() {
+        objects = layout.createObjects(new BodyStore(bodies), bodies);
+        start = layout.positions(bodies);
+    }
+
+    // Os corpos voltam à posição inicial antes de cada medição, para não se afastarem da cena
+    @Setup(Level.Iteration)
+    public void resetPositions() {
+        for (int i = 0; i < objects.length; i++) {
+            objects[i].setPosition(start[i * 2], start[i * 2 + 1]);
+        }
+    }
+
+    @Benchmark
+    public void update(Blackhole blackhole) {
+        for (PhysicsObject obj : objects) {
+            obj.update(STEP);
+        }
+        blackhole.consume(objects);
+    }
+
+    @Benchmark
+    public int collidesWith() {
+        int hits = 0;
+        for (int i = 1; i < objects.length; i++) {
+            if (objects[i - 1].collidesWith(objects[i])) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public void getCollisionSide(Blackhole blackhole) {
+        for (int i = 1; i < objects.length; i++) {
+            blackhole.consume(objects[i - 1].getCollisionSide(objects[i]));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.bosonshiggs.physicsengine.benchmarks;
+
+import com.bosonshiggs.physicsengine.helpers.BodyStore;
+import com.bosonshiggs.physicsengine.helpers.PhysicsObject;
+import com.bosonshiggs.physicsengine.helpers.QuadTree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserção de todos os corpos em uma quad-tree vazia e consulta de candidatos
+ * para cada corpo, como a fase ampla faz a cada passo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuadTreeBenchmark {
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int bodies;
+
+    @Param({"UNIFORM", "CLUSTERED", "LINE"})
+    public BodyLayout layout;
+
+    private PhysicsObject[] objects;
+    private QuadTree empty;
+    private QuadTree filled;
+    private final List<PhysicsObject> candidates = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        objects = layout.createObjects(new BodyStore(bodies), bodies);
+        float size = BodyLayout.worldSize(bodies);
+        empty = new QuadTree(0, new QuadTree.Rect(0, 0, size, size));
+        filled = new QuadTree(0, new QuadTree.Rect(0, 0, size, size));
+        for (PhysicsObject obj : objects) {
+            filled.insert(obj);
+        }
+    }
+
+    @Benchmark
+    public QuadTree insertAll() {
+        empty.clear();
+        for (PhysicsObject obj : objects) {
+            empty.insert(obj);
+        }
+        return empty;
+    }
+
+    // Retorna o total de candidatos, que também mostra quanto cada distribuição sobrecarrega a fase estreita
+    @Benchmark
+    public int retrieveAll() {
+        int total = 0;
+        for (PhysicsObject obj : objects) {
+            candidates.clear();
+            filled.retrieve(candidates, obj);
+            total += candidates.size();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,88 @@
+package com.bosonshiggs.physicsengine.benchmarks;
+
+import com.bosonshiggs.physicsengine.helpers.ParallelLoop;
+import com.bosonshiggs.physicsengine.helpers.PhysicsObject;
+import com.bosonshiggs.physicsengine.helpers.World;
+import com.bosonshiggs.physicsengine.helpers.WorldSnapshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passo completo do World (integração, fase ampla, fase estreita, plataformas,
+ * sono e seguidores) com os corpos caindo sobre uma plataforma no fundo da área.
+ *
+ * Cada iteração recomeça da mesma cena, restaurada de um snapshot, para que a
+ * medição não dependa de quantos corpos já pararam e adormeceram.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepBenchmark {
+    private static final float STEP = 1.0f / 60.0f;
+    private static final int GROUND_ID = 0;
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int bodies;
+
+    @Param({"UNIFORM", "CLUSTERED", "LINE"})
+    public BodyLayout layout;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private World world;
+    private final WorldSnapshot start = new WorldSnapshot();
+
+    @Setup
+    public void setUp() {
+        float size = BodyLayout.worldSize(bodies);
+        world = new World(size, size);
+        world.setParallelLoop(new ParallelLoop(threads, World.PARALLEL_CHUNK_SIZE, world.getParallelLoop().getThreshold()));
+
+        PhysicsObject ground = world.addBody(GROUND_ID, 0, size - BodyLayout.BODY_SIZE, size, BodyLayout.BODY_SIZE, 1.0f, 0.5f);
+        world.setPlatform(ground, true);
+
+        float[] positions = layout.positions(bodies);
+        Random random = new Random(7L);
+        for (int i = 0; i < bodies; i++) {
+            PhysicsObject obj = world.addBody(i + 1, positions[i * 2], positions[i * 2 + 1],
+                    BodyLayout.BODY_SIZE, BodyLayout.BODY_SIZE, 1.0f, 0.1f);
+            obj.setVelocity(random.nextFloat() * 40.0f - 20.0f, random.nextFloat() * 40.0f - 20.0f);
+        }
+        world.capture(start);
+    }
+
+    @Setup(Level.Iteration)
+    public void restoreScene() {
+        world.restore(start);
+    }
+
+    @TearDown
+    public void tearDown() {
+        world.getParallelLoop().shutdown();
+    }
+
+    @Benchmark
+    public long step() {
+        world.step(STEP);
+        return world.getTick();
+    }
+}
@@ -18,6 +18,23 @@ import com.bosonshiggs.physicsengine.helpers.FollowInfo;
 import com.bosonshiggs.physicsengine.helpers.Sprite;
 import com.bosonshiggs.physicsengine.helpers.OriginPoint;
 import com.bosonshiggs.physicsengine.helpers.QuadTree;
+import com.bosonshiggs.physicsengine.helpers.BroadphaseType;
+import com.bosonshiggs.physicsengine.helpers.SweepAndPrune;
+import com.bosonshiggs.physicsengine.helpers.SpatialHashGrid;
+import com.bosonshiggs.physicsengine.helpers.DynamicAABBTree;
+import com.bosonshiggs.physicsengine.helpers.ParallelLoop;
+import com.bosonshiggs.physicsengine.helpers.Shape;
+import com.bosonshiggs.physicsengine.helpers.ShapeCollision;
+import com.bosonshiggs.physicsengine.helpers.WorldSnapshot;
+import com.bosonshiggs.physicsengine.helpers.WorldFile;
+import com.bosonshiggs.physicsengine.helpers.ReplayRecorder;
+import com.bosonshiggs.physicsengine.helpers.ReplayPlayer;
+import com.bosonshiggs.physicsengine.helpers.FixedTimestep;
+import com.bosonshiggs.physicsengine.helpers.BodyStore;
+import com.bosonshiggs.physicsengine.helpers.World;
+import com.bosonshiggs.physicsengine.helpers.WorldEvents;
+import com.bosonshiggs.physicsengine.helpers.WorldLogger;
+import com.bosonshiggs.physicsengine.helpers.StepStats;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -34,14 +51,12 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ScheduledExecutorService;
 
-import java.util.Set;
-import java.util.HashSet;
-
 import android.os.Build;
 
 import android.os.Handler;
 import android.os.Looper;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.FileOutputStream;
@@ -74,16 +89,27 @@ import android.util.LruCache;
 	)
 @SimpleObject(external = true)
 public class PhysicsEngine extends AndroidNonvisibleComponent {
-    private Map<Integer, PhysicsObject> objects = new HashMap<>();
+    // Núcleo da simulação, sem dependências do Android; este componente só o adapta ao App Inventor
+    private final World world;
+    // Atalhos para as coleções do mundo, usados pelos blocos
+    private final BodyStore objects;
+    private final Map<Integer, Container> containers;
+    private final Map<Integer, FollowInfo> followingObjects;
+    private float spatialHashCellSize = 32.0f;
+    private float aabbTreeMargin = 4.0f;
+
+    // Snapshots do mundo por ID; os liberados voltam para o pool e são reaproveitados
+    private final Map<Integer, WorldSnapshot> snapshots = new HashMap<>();
+    private final List<WorldSnapshot> snapshotPool = new ArrayList<>();
+    private int nextSnapshotId = 1;
+    
+    // Reprodução de replays em andamento
+    private volatile boolean replaying = false;
+
     private HashMap<Integer, String> objectToLayerMap = new HashMap<>();
     private HashMap<String, Runnable> animationTasks = new HashMap<>();
-    private Map<Integer, Container> containers = new HashMap<>();
     private Map<Integer, Sprite> sprites = new HashMap<>();
     
-    // Mapa para armazenar os objetos que estão seguindo outros objetos
-    private Map<Integer, FollowInfo> followingObjects = new HashMap<>();
-
-    private Vector2D gravity = new Vector2D(0, 9.8f);
     
     private String LOG_NAME = "PhysicsEngine";
     private boolean flagLog = false;
@@ -97,6 +123,14 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
     
     private ScheduledExecutorService scheduler;
     
+    // Passo fixo da simulação (0 = usa o período de StartUpdates)
+    private int fixedTimeStepMs = 0;
+    private int maxStepsPerFrame = 5;
+    private FixedTimestep timestep = new FixedTimestep(1 / 60.0f, maxStepsPerFrame);
+    
+    // Fator de interpolação entre o passo anterior e o atual usado no desenho
+    private volatile float renderAlpha = 1.0f;
+    
     private Handler uiHandler = new Handler(Looper.getMainLooper());
     
     // Handler para atualizações periódicas
@@ -153,6 +187,46 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
  // Inicializa o cache de bitmaps
     private BitmapCache bitmapCache = new BitmapCache();
     
+    // Liga o log do núcleo ao android.util.Log, respeitando flagLog para as mensagens de depuração
+    private final WorldLogger androidLogger = new WorldLogger() {
+        @Override
+        public boolean isDebugEnabled() {
+            return flagLog;
+        }
+
+        @Override
+        public void debug(String tag, String message) {
+            Log.d(tag, message);
+        }
+
+        @Override
+        public void error(String tag, String message, Throwable error) {
+            Log.e(tag, message, error);
+        }
+    };
+    
+    // Transforma os eventos do passo em eventos do App Inventor
+    private final WorldEvents worldEvents = new WorldEvents() {
+        @Override
+        public void onCollision(final int objectId1, final int objectId2, final String collisionSide) {
+            // Postar o evento de colisão para ser executado no thread da UI
+            uiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    OnCollision(objectId1, objectId2, collisionSide);
+                }
+            });
+        }
+
+        @Override
+        public void onPositionChanged(int objectId, float x, float y) {
+            OnPositionChanged(objectId, x, y);
+            if (isParallaxEnabled) {
+                UpdateParallaxEffectRelativeToObject(objectId);
+            }
+        }
+    };
+    
     public PhysicsEngine(ComponentContainer container) {
         super(container.$form());
         this.container = container;
@@ -162,6 +236,13 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
      // Inicialize a câmera com valores padrão
         this.camera = new Camera(0, 0, 1.0f); // Posição (0,0) com zoom padrão 1
         
+        this.world = new World(canvasWidth, canvasHeight);
+        world.setLogger(androidLogger);
+        world.setEvents(worldEvents);
+        this.objects = world.getBodies();
+        this.containers = world.getContainers();
+        this.followingObjects = world.getFollowers();
+        
         scheduler = Executors.newSingleThreadScheduledExecutor();
         
      // Inicialização do PhysicsEngine...
@@ -219,6 +300,9 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
 
     @SimpleFunction(description = "Stops periodic updates for the physics simulation.")
     public void StopUpdates() {
+        shutdownScheduler();
+        renderAlpha = 1.0f;
+        
         if (updateTask != null) {
             // Remove callbacks e mensagens para a tarefa de atualização
             updateHandler.removeCallbacks(updateTask);
@@ -227,88 +311,109 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
   
     @SimpleFunction(description = "Adds a physical object to the simulation with specified properties.")
     public void AddObject(int id, float x, float y, float width, float height, float mass, float friction) {
-        objects.put(id, new PhysicsObject(x, y, width, height, mass, friction));
+        world.addBody(id, x, y, width, height, mass, friction);
     }
     
     @SimpleFunction(description = "Applies a temporary force to an object identified by its ID.")
     public void ApplyForce(int id, float forceX, float forceY, final int durationMs) {
-        final PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            // Aplica a força
-            obj.applyForce(new Vector2D(forceX, forceY));
-
-            // Cria um manipulador para redefinir a força após a duração especificada
-            new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    // Redefine a força aplicada para zero
-                    obj.applyForce(new Vector2D(0, 0));
-                }
-            }, durationMs);
+        synchronized (this.objects) {
+            final PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                // Aplica a força
+                obj.applyForce(new Vector2D(forceX, forceY));
+                world.record(ReplayRecorder.FORCE, id, forceX, forceY);
+
+                // Redefine a força após a duração especificada
+                runAfter(durationMs, new Runnable() {
+                    @Override
+                    public void run() {
+                        // Redefine a força aplicada para zero
+                        synchronized (objects) {
+                            obj.applyForce(new Vector2D(0, 0));
+                            world.record(ReplayRecorder.FORCE, obj.getId(), 0, 0);
+                        }
+                    }
+                });
 
-            // Atualiza o estado onPlatform do objeto
-            updateOnPlatformState(obj);
+                // Atualiza o estado onPlatform do objeto
+                world.updateOnPlatformState(obj);
+            }
         }
     }
 
        
     @SimpleFunction(description = "Removes an object from the simulation based on its ID.")
     public void RemoveObject(int id) {
-        objects.remove(id);
+        world.removeBody(id);
     }
     
     @SimpleFunction(description = "Clears all objects from the physics simulation.")
     public void ClearObjects() {
-        objects.clear();
+        world.clearBodies();
     }
 
     @SimpleFunction(description = "Checks if two objects are colliding.")
     public boolean AreObjectsColliding(int id1, int id2) {
-        PhysicsObject obj1 = objects.get(id1);
-        PhysicsObject obj2 = objects.get(id2);
-        if (obj1 != null && obj2 != null) {
-            return obj1.collidesWith(obj2);
+        synchronized (this.objects) {
+            PhysicsObject obj1 = objects.get(id1);
+            PhysicsObject obj2 = objects.get(id2);
+            if (obj1 != null && obj2 != null) {
+                return obj1.collidesWith(obj2) && new ShapeCollision().test(obj1, obj2);
+            }
+            return false;
         }
-        return false;
     }
 
     @SimpleFunction(description = "Updates the properties of an existing object.")
     public void SetObjectProperties(int id, float x, float y, float width, float height, float mass, float friction) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.setPosition(new Vector2D(x, y));
-            obj.setSize(new Vector2D(width, height));
-            obj.setMass(mass);
-            obj.setFriction(friction);
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setPosition(new Vector2D(x, y));
+                obj.savePreviousState();
+                obj.setSize(new Vector2D(width, height));
+                obj.setMass(mass);
+                obj.setFriction(friction);
+                world.record(ReplayRecorder.POSITION, id, x, y);
+                world.record(ReplayRecorder.BODY, id, width, height, mass, friction);
             
-         // Atualiza o estado onPlatform do objeto
-            updateOnPlatformState(obj);
+             // Atualiza o estado onPlatform do objeto
+                world.updateOnPlatformState(obj);
+            }
         }
     }
 
     @SimpleFunction(description = "Returns the position of an object as a list [x, y].")
     public YailList GetObjectPosition(int id) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            Vector2D pos = obj.getPosition();
-            return YailList.makeList(new Object[]{pos.x, pos.y});
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                Vector2D pos = obj.getPosition();
+                return YailList.makeList(new Object[]{pos.x, pos.y});
+            }
+            return YailList.makeList(new Object[]{0f, 0f});
         }
-        return YailList.makeList(new Object[]{0f, 0f});
     }
     
     @SimpleFunction(description = "Sets the global gravity affecting all objects.")
     public void SetGravity(float x, float y) {
-    	this.gravity = new Vector2D(x, y);
+        synchronized (this.objects) {
+            world.setGravity(x, y);
+            world.wakeAll();
+            world.record(ReplayRecorder.GRAVITY, 0, x, y, 1);
+        }
     }
 
     @SimpleFunction(description = "Returns the velocity of an object as a list [vx, vy].")
     public YailList GetObjectVelocity(int id) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            Vector2D vel = obj.getVelocity();
-            return YailList.makeList(new Object[]{vel.x, vel.y});
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                Vector2D vel = obj.getVelocity();
+                return YailList.makeList(new Object[]{vel.x, vel.y});
+            }
+            return YailList.makeList(new Object[]{0f, 0f});
         }
-        return YailList.makeList(new Object[]{0f, 0f});
     }
     
     /*
@@ -316,11 +421,23 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
      */
     //@SimpleFunction(description = "Updates the physics simulation, progressing time by the specified delta.")
  // Método auxiliar para determinar se dois objetos estão próximos o suficiente para considerar colisão
-    @SimpleFunction(description = "Starts periodic updates for the physics simulation.")
+    @SimpleFunction(description = "Starts periodic updates for the physics simulation. "
+    		+ "Each wake-up runs as many fixed time steps as the real elapsed time requires.")
     public void StartUpdates(final int updateTimeMs) {
+        if (updateTimeMs <= 0) {
+            ReportError("Invalid update interval: it must be greater than zero.");
+            return;
+        }
+        
         // Certifica-se de que o scheduler anterior seja fechado corretamente antes de criar um novo
         shutdownScheduler();
 
+        // Sem um passo fixo definido, usa o próprio período como passo
+        int stepMs = fixedTimeStepMs > 0 ? fixedTimeStepMs : updateTimeMs;
+        timestep.setStepSeconds(stepMs / 1000.0f);
+        timestep.setMaxStepsPerFrame(maxStepsPerFrame);
+        timestep.reset();
+
         // Cria um novo ScheduledExecutorService
         scheduler = Executors.newSingleThreadScheduledExecutor();
 
@@ -328,189 +445,628 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
         scheduler.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
-                // Sua lógica de atualização aqui
-                update(updateTimeMs / 1000.0f);
+                stepFrame(System.nanoTime());
             }
         }, 0, updateTimeMs, TimeUnit.MILLISECONDS);
     }
     
-    private boolean areObjectsClose(PhysicsObject obj1, PhysicsObject obj2) {
-        float maxDistance = 100.0f; // Define o máximo de distância para considerar colisões
-        float dx = obj1.getPosition().x - obj2.getPosition().x;
-        float dy = obj1.getPosition().y - obj2.getPosition().y;
-        return (dx * dx + dy * dy) <= (maxDistance * maxDistance);
+    @SimpleFunction(description = "Sets the fixed physics time step in milliseconds. "
+    		+ "Use 0 to step with the same period given to StartUpdates.")
+    public void SetFixedTimeStep(int stepMs) {
+        if (stepMs < 0) {
+            ReportError("Invalid time step: it must not be negative.");
+            return;
+        }
+        this.fixedTimeStepMs = stepMs;
+        if (stepMs > 0) {
+            timestep.setStepSeconds(stepMs / 1000.0f);
+        }
     }
     
-    public synchronized void update(final float deltaTimeMs) {
-        final float deltaTime = deltaTimeMs / 1000.0f;
-        try {
-           if(flagLog) Log.d(LOG_NAME, "Iniciando a atualização do ciclo de física");
+    @SimpleFunction(description = "Enables or disables the deterministic mode. Timed actions (ApplyForce and MakeObjectJump durations, " +
+            "TriggerTimedEvent) are then counted in simulation steps instead of real time, and objects are processed in ID order, " +
+            "so the same inputs on the same steps always produce the same simulation.")
+    public void SetDeterministic(boolean enabled) {
+        world.setDeterministic(enabled);
+    }
+    
+    @SimpleFunction(description = "Returns how many physics steps have run since the extension was created.")
+    public long GetSimulationTick() {
+        return world.getTick();
+    }
+    
+    @SimpleFunction(description = "Captures the whole world (objects, containers, followers and step-timed actions) " +
+            "and returns a snapshot ID for RestoreSnapshot. Release snapshots you no longer need so their memory is reused; " +
+            "reused snapshots only copy the objects that changed.")
+    public int TakeSnapshot() {
+        WorldSnapshot snapshot;
+        synchronized (snapshotPool) {
+            snapshot = snapshotPool.isEmpty() ? new WorldSnapshot() : snapshotPool.remove(snapshotPool.size() - 1);
+        }
+        captureState(snapshot);
 
-            QuadTree.Rect bounds = new QuadTree.Rect(0, 0, canvasWidth, canvasHeight);
-            QuadTree quadTree = new QuadTree(0, bounds);
+        synchronized (snapshots) {
+            int snapshotId = nextSnapshotId++;
+            snapshots.put(snapshotId, snapshot);
+            return snapshotId;
+        }
+    }
+    
+    @SimpleFunction(description = "Returns the world to the state captured by TakeSnapshot, including the simulation step. " +
+            "The snapshot stays available, so the same state can be restored again. Restoring a snapshot ends any recording.")
+    public void RestoreSnapshot(int snapshotId) {
+        stopRecording();
+        WorldSnapshot snapshot;
+        synchronized (snapshots) {
+            snapshot = snapshots.get(snapshotId);
+        }
+        if (snapshot == null) {
+            ReportError("Snapshot not found: " + snapshotId);
+            return;
+        }
+        restoreState(snapshot);
+    }
+    
+    @SimpleFunction(description = "Releases a snapshot so its memory can be reused by the next TakeSnapshot.")
+    public void ReleaseSnapshot(int snapshotId) {
+        WorldSnapshot snapshot;
+        synchronized (snapshots) {
+            snapshot = snapshots.remove(snapshotId);
+        }
+        if (snapshot != null) {
+            synchronized (snapshotPool) {
+                snapshotPool.add(snapshot);
+            }
+        }
+    }
+    
+    @SimpleFunction(description = "Saves the whole world (objects, shapes, layers, sprites, containers, followers and gravity) " +
+            "to a binary file. A relative path is saved in the app's external files folder.")
+    public void SaveWorld(String path) {
+        try {
+            writeWorld(resolveWorldFile(path));
+        } catch (IOException e) {
+            ReportError("Error saving world: " + e.getMessage());
+        }
+    }
+    
+    @SimpleFunction(description = "Replaces the current world with one saved by SaveWorld. " +
+            "Sprite images are loaded again from their original image paths. Loading a world ends any recording.")
+    public void LoadWorld(String path) {
+        stopRecording();
+        loadWorld(resolveWorldFile(path));
+    }
+    
+    private void writeWorld(File file) throws IOException {
+        WorldFile saved = new WorldFile();
+        saved.setGravity(world.getGravity().x, world.getGravity().y);
 
-            synchronized (this.objects) {
-                for (PhysicsObject obj : new ArrayList<>(objects.values())) {
-                    quadTree.insert(obj);
+        for (Map.Entry<String, Layer> entry : layerMap.entrySet()) {
+            Layer layer = entry.getValue();
+            saved.getLayers().add(new WorldFile.LayerRecord(entry.getKey(), layer.zIndex, layer.parallaxIntensity));
+        }
+        synchronized (this.sprites) {
+            for (Map.Entry<Integer, Sprite> entry : sprites.entrySet()) {
+                Sprite sprite = entry.getValue();
+                OriginPoint origin = sprite.getOriginPoint();
+                saved.getSprites().add(new WorldFile.SpriteRecord(entry.getKey(), sprite.getLayerName(), sprite.getImagePath(),
+                        origin == null ? null : origin.toUnderlyingValue(), sprite.getCustomOrigin().x, sprite.getCustomOrigin().y,
+                        sprite.getScale(), sprite.getRotation(), sprite.isVisible()));
+            }
+        }
+        synchronized (this.objects) {
+            synchronized (this.containers) {
+                for (Container container : containers.values()) {
+                    int[] record = new int[container.getChildCount() + 1];
+                    record[0] = container.getParent().getId();
+                    for (int i = 0; i < container.getChildCount(); i++) {
+                        record[i + 1] = container.getChild(i).getId();
+                    }
+                    saved.getContainers().add(record);
                 }
+            }
+        }
+        saved.getFollowers().addAll(followingObjects.values());
+        saved.write(file, objects);
+    }
+    
+    // Substitui o mundo atual pelo do arquivo; retorna false, depois de reportar o erro, se não conseguir
+    private boolean loadWorld(File file) {
+        if (!file.isFile()) {
+            ReportError("World file not found: " + file.getPath());
+            return false;
+        }
 
-                for (PhysicsObject obj : new ArrayList<>(objects.values())) {
-                    updateObject(obj, deltaTime);
-                }
+        // O arquivo é lido por inteiro antes de mexer no mundo; se for inválido, nada é perdido
+        WorldFile saved;
+        try {
+            saved = WorldFile.read(file);
+        } catch (IOException e) {
+            ReportError("Error loading world: " + e.getMessage());
+            return false;
+        }
+
+        synchronized (this.objects) {
+            synchronized (this.sprites) {
+                sprites.clear();
+            }
+            synchronized (this.containers) {
+                containers.clear();
             }
+            followingObjects.clear();
+            world.clearBodies();
+            world.getContactSolver().clear();
 
-            Set<String> checkedPairs = new HashSet<>();
-            synchronized (this.objects) {
-            	for (Map.Entry<Integer, PhysicsObject> entry : objects.entrySet()) {
-                    PhysicsObject obj1 = entry.getValue();
-                    List<PhysicsObject> candidates = quadTree.retrieve(new ArrayList<PhysicsObject>(), obj1);
+            // Os corpos são copiados direto para o BodyStore; as estruturas derivadas são refeitas aqui
+            saved.loadBodies(objects);
+            world.rebuildBodyIndexes();
+        }
+        world.setGravity(saved.getGravityX(), saved.getGravityY());
 
-                    for (PhysicsObject obj2 : candidates) {
-                        if (obj1 == obj2) continue;
-                        
-                        String pairKey = Math.min(entry.getKey(), findObjectId(obj2)) + "-" + Math.max(entry.getKey(), findObjectId(obj2));
-                        if (!checkedPairs.add(pairKey)) continue;
+        layerMap.clear();
+        activeLayerName = null;
+        for (WorldFile.LayerRecord record : saved.getLayers()) {
+            Layer layer = new Layer(Bitmap.createBitmap(canvasWidth, canvasHeight, Bitmap.Config.ARGB_8888), record.zIndex);
+            layer.parallaxIntensity = record.parallax;
+            layerMap.put(record.name, layer);
+            activeLayerName = record.name;
+        }
 
-                        if (obj1.collidesWith(obj2)) {
-                            String collisionSide = determineCollisionSide(obj1, obj2);
-                            handleCollision(obj1, obj2, collisionSide);
-                        }
-                    }
+        for (WorldFile.SpriteRecord record : saved.getSprites()) {
+            PhysicsObject obj = objects.get(record.objectId);
+            if (obj == null) continue;
+            try {
+                Bitmap image = loadWorldBitmap(record.imagePath, obj);
+                Sprite sprite = new Sprite(image, obj);
+                sprite.setImagePath(record.imagePath);
+                sprite.setLayerName(record.layerName);
+                OriginPoint origin = record.originPoint == null ? null : OriginPoint.fromUnderlyingValue(record.originPoint);
+                sprite.setOriginPoint(origin, new Vector2D(record.originX, record.originY));
+                sprite.setRotation(record.rotation);
+                sprite.setVisible(record.visible);
+                synchronized (this.objects) {
+                    sprite.setScale(record.scale);
+                    sprite.updatePosition(obj.getX(), obj.getY());
                 }
+                synchronized (this.sprites) {
+                    sprites.put(record.objectId, sprite);
+                }
+            } catch (IOException e) {
+                ReportError("Error loading image for sprite " + record.objectId + ": " + e.getMessage());
             }
+        }
 
-            if (isParallaxEnabled) {
-                synchronized (this.layerMap) {
-                    for (Layer layer : new ArrayList<>(layerMap.values())) {
-                        if (layer.parallaxIntensity > 0.0f) {
-                            updateLayerParallax(layer);
+        synchronized (this.objects) {
+            synchronized (this.containers) {
+                for (int[] record : saved.getContainers()) {
+                    PhysicsObject parent = objects.get(record[0]);
+                    if (parent == null) continue;
+                    Container container = new Container(parent);
+                    for (int i = 1; i < record.length; i++) {
+                        PhysicsObject child = objects.get(record[i]);
+                        if (child != null) {
+                            container.addChild(child);
                         }
                     }
+                    containers.put(record[0], container);
                 }
             }
+        }
+        for (FollowInfo follower : saved.getFollowers()) {
+            followingObjects.put(follower.getFollowerId(), follower);
+        }
 
+        RedrawCanvas(-1, showCollisionBoxes);
+        return true;
+    }
+    
+    // Caminhos relativos ficam na pasta de arquivos externos do app
+    private File resolveWorldFile(String path) {
+        File file = new File(path);
+        if (file.isAbsolute()) {
+            return file;
+        }
+        return new File(container.$form().getExternalFilesDir(null), path);
+    }
+    
+    // Carrega a imagem de uma sprite salva, pelo cache, no tamanho do corpo
+    private Bitmap loadWorldBitmap(String imagePath, PhysicsObject obj) throws IOException {
+        if (imagePath == null) {
+            throw new IOException("The sprite has no image path");
+        }
+        Bitmap image = bitmapCache.getBitmapFromMemCache(imagePath);
+        if (image == null) {
+            Drawable drawable = MediaUtil.getBitmapDrawable(container.$form(), imagePath);
+            image = ((BitmapDrawable) drawable).getBitmap();
+            bitmapCache.addBitmapToMemoryCache(imagePath, image);
+        }
+        int width = Math.max(1, (int)obj.getWidth());
+        int height = Math.max(1, (int)obj.getHeight());
+        return Bitmap.createScaledBitmap(image, width, height, true);
+    }
+    
+    @SimpleFunction(description = "Starts recording every change made to the objects (spawns, removals, forces, velocities, " +
+            "positions, sizes, masses and gravity) plus a checksum of the world after each step. The current world is saved " +
+            "next to the log, in path + \".world\", so PlayReplay can start from it. Runs in deterministic mode reproduce exactly.")
+    public void StartRecording(String path) {
+        stopRecording();
+        File file = resolveWorldFile(path);
+        synchronized (this) {
+            // O mundo salvo recomeça acordado e com os índices na ordem dos slots, como LoadWorld o deixa
+            world.wakeAll();
+            world.rebuildBodyIndexes();
+            try {
+                writeWorld(new File(file.getPath() + ".world"));
+                world.setRecorder(new ReplayRecorder(file, world.getTick(), world.isDeterministic()));
+            } catch (IOException e) {
+                ReportError("Error starting recording: " + e.getMessage());
+            }
+        }
+    }
+    
+    @SimpleFunction(description = "Stops the recording and writes what is still pending to the log.")
+    public void StopRecording() {
+        stopRecording();
+    }
+    
+    @SimpleFunction(description = "Loads the world saved by StartRecording and replays the log as fast as possible, " +
+            "without waiting for real time. Periodic updates are stopped first. Reports the first step whose checksum " +
+            "differs from the recording with ReplayDesync and the end of the log with ReplayFinished.")
+    public void PlayReplay(String path) {
+        stopRecording();
+        StopUpdates();
+        final File file = resolveWorldFile(path);
+        final ReplayPlayer player;
+        try {
+            player = new ReplayPlayer(file);
+        } catch (IOException e) {
+            ReportError("Error opening replay: " + e.getMessage());
+            return;
+        }
+        if (!loadWorld(new File(file.getPath() + ".world"))) {
+            return;
+        }
+
+        synchronized (this) {
+            world.setTick(player.getStartTick());
+            world.setDeterministic(player.isDeterministic());
+            world.getTickScheduler().clear();
+            replaying = true;
+        }
+        executorService.submit(new Runnable() {
+            @Override
+            public void run() {
+                runReplay(player);
+            }
+        });
+    }
+    
+    @SimpleFunction(description = "Stops a replay started by PlayReplay.")
+    public void StopReplay() {
+        replaying = false;
+    }
+    
+    @SimpleFunction(description = "Returns true while a replay started by PlayReplay is running.")
+    public boolean IsReplaying() {
+        return replaying;
+    }
+    
+    private void stopRecording() {
+        ReplayRecorder active = world.getRecorder();
+        world.setRecorder(null);
+        if (active != null) {
+            try {
+                active.close();
+            } catch (IOException e) {
+                ReportError("Error writing recording: " + e.getMessage());
+            }
+        }
+    }
+    
+    /*
+     * Reproduz o log passo a passo: aplica as alterações gravadas antes de cada passo,
+     * executa o passo com a mesma duração e compara o checksum com o gravado.
+     */
+    private void runReplay(ReplayPlayer player) {
+        long steps = 0;
+        int desyncs = 0;
+        while (replaying && player.hasRecord()) {
+            while (player.hasRecord() && player.getType() != ReplayRecorder.HASH) {
+                world.apply(player);
+                player.advance();
+            }
+            if (!player.hasRecord()) {
+                break;
+            }
+            final long recordedTick = player.getTick();
+            long expected = player.getHash();
+            float deltaTime = player.getDeltaTime();
+            player.advance();
+
+            update(deltaTime);
+            steps++;
+            if (objects.stateHash() != expected && desyncs++ == 0) {
+                uiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        ReplayDesync(recordedTick);
+                    }
+                });
+            }
+        }
+        replaying = false;
+
+        final long totalSteps = steps;
+        final int totalDesyncs = desyncs;
+        uiHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                RedrawCanvas(-1, showCollisionBoxes);
+                ReplayFinished(totalSteps, totalDesyncs);
+            }
+        });
+    }
+    
+    private void recordVelocity(PhysicsObject obj) {
+        world.record(ReplayRecorder.VELOCITY, obj.getId(), obj.getVelocity().x, obj.getVelocity().y);
+    }
+    
+    private void recordBody(PhysicsObject obj) {
+        world.record(ReplayRecorder.BODY, obj.getId(), obj.getWidth(), obj.getHeight(), obj.getMass(), obj.getFriction());
+    }
+    
+    /**
+     * Captura o estado do mundo no snapshot informado, reaproveitando os vetores dele.
+     */
+    public synchronized void captureState(WorldSnapshot snapshot) {
+        world.capture(snapshot);
+    }
+    
+    /**
+     * Volta o mundo ao estado do snapshot. Objetos criados depois da captura são
+     * removidos e objetos removidos são recriados; os que continuam existindo
+     * mantêm as mesmas instâncias.
+     */
+    public synchronized void restoreState(WorldSnapshot snapshot) {
+        world.restore(snapshot);
+
+        synchronized (this.objects) {
             synchronized (this.sprites) {
-                for (Map.Entry<Integer, Sprite> entry : new HashMap<>(sprites).entrySet()) {
-                    Sprite sprite = entry.getValue();
+                for (Map.Entry<Integer, Sprite> entry : sprites.entrySet()) {
                     PhysicsObject obj = objects.get(entry.getKey());
                     if (obj != null) {
-                        sprite.updatePosition(obj.getPosition().x, obj.getPosition().y);
+                        entry.getValue().updatePosition(obj.getX(), obj.getY());
                     }
                 }
             }
-            
-            synchronized (this.objects) {
-	            for (PhysicsObject obj : objects.values()) {
-	                boolean onPlatform = false;
-	                for (PhysicsObject platform : objects.values()) {
-	                    if (platform.isPlatform() && obj.getPosition().y + obj.getSize().y <= platform.getPosition().y && Math.abs(obj.getPosition().x - platform.getPosition().x) < platform.getSize().x) {
-	                        onPlatform = true;
-	                        break;
-	                    }
-	                }
-	                obj.setOnPlatform(onPlatform);
-	            }
-            }
-
-            updateFollowing(deltaTime);
-
-            if(flagLog) Log.d(LOG_NAME, "Finalizando a atualização do ciclo de física");
-        } catch (Exception e) {
-            Log.e(LOG_NAME, "Erro durante a atualização do ciclo de física", e);
-        } finally {
-            OnUpdate();
         }
     }
     
-    private String determineCollisionSide(PhysicsObject obj1, PhysicsObject obj2) {
-        // Este é um exemplo simples. Você precisará ajustar a lógica com base na sua implementação específica
-        if (obj1.getPosition().x < obj2.getPosition().x) {
-            return "left";
-        } else if (obj1.getPosition().x > obj2.getPosition().x) {
-            return "right";
-        } else if (obj1.getPosition().y < obj2.getPosition().y) {
-            return "top";
+    /*
+     * Executa a ação depois do atraso. No modo determinístico o atraso vira um número
+     * de passos da simulação e a ação roda no início do passo correspondente;
+     * fora dele, a ação é postada no thread principal pelo relógio real.
+     */
+    private void runAfter(int delayMs, Runnable action) {
+        if (world.isDeterministic()) {
+            float stepMs = timestep.getStepSeconds() * 1000.0f;
+            // A folga evita um passo a mais quando o passo em float fica logo abaixo do valor em ms
+            long steps = Math.max(1, (long)Math.ceil(delayMs / stepMs - 1e-3));
+            world.getTickScheduler().schedule(world.getTick() + steps, action);
         } else {
-            return "bottom";
+            new Handler(Looper.getMainLooper()).postDelayed(action, delayMs);
         }
     }
-
-    private synchronized void updateObject(PhysicsObject obj, float deltaTime) {
-        // Atualiza o estado onPlatform do objeto
-        updateOnPlatformState(obj);
-
-        // Aplica a gravidade se o objeto não estiver sobre uma plataforma
-        if (!obj.isOnPlatform()) {
-            obj.applyForce(this.gravity);
-        } else {
-            obj.applyForce(new Vector2D(0f, 0f));
+    
+    @SimpleFunction(description = "Sets the maximum number of physics steps run per update to catch up with real time.")
+    public void SetMaxStepsPerFrame(int maxSteps) {
+        if (maxSteps <= 0) {
+            ReportError("Invalid maximum steps per frame: it must be greater than zero.");
+            return;
+        }
+        this.maxStepsPerFrame = maxSteps;
+        timestep.setMaxStepsPerFrame(maxSteps);
+    }
+    
+    @SimpleFunction(description = "Selects the broadphase used to find collision candidates: QuadTree, SweepAndPrune, SpatialHash or AABBTree. " +
+            "SweepAndPrune keeps the overlapping pairs between steps and works best when most objects move little each step. " +
+            "SpatialHash works best with many objects of similar size; see SetSpatialHashCellSize. " +
+            "AABBTree has no world bounds, so objects outside the canvas stay cheap; see SetAABBTreeMargin.")
+    public void SetBroadphase(@Options(BroadphaseType.class) String type) {
+        BroadphaseType broadphaseType = BroadphaseType.fromUnderlyingValue(type);
+        if (broadphaseType == null) {
+            ReportError("Invalid broadphase type: " + type);
+            return;
         }
 
-        // Atualiza o objeto
-        obj.update(deltaTime);
-
-        // Verifica colisões com outros objetos
-        checkCollisionsForObject(obj);
-
-        // Dispara o evento de posição alterada
-        final int objectId = findObjectId(obj);
-        final Vector2D newPosition = obj.getPosition();
-        OnPositionChanged(objectId, newPosition.x, newPosition.y);
-        
-        // Se as caixas de colisão estão ativadas, redesenha o canvas com elas
-        if (showCollisionBoxes) {
-        	RedrawCanvas(-1, true);
+        if (broadphaseType == BroadphaseType.SWEEP_AND_PRUNE) {
+            world.setBroadphase(new SweepAndPrune());
+        } else if (broadphaseType == BroadphaseType.SPATIAL_HASH) {
+            world.setBroadphase(new SpatialHashGrid(spatialHashCellSize));
+        } else if (broadphaseType == BroadphaseType.AABB_TREE) {
+            world.setBroadphase(new DynamicAABBTree(aabbTreeMargin));
         } else {
-        	 RedrawCanvas(-1, showCollisionBoxes);
+            world.setBroadphase(new QuadTree(0, new QuadTree.Rect(0, 0, canvasWidth, canvasHeight)));
         }
-        
-        if (this.isParallaxEnabled) {
-            UpdateParallaxEffectRelativeToObject(objectId);
+    }
+    
+    @SimpleFunction(description = "Sets the cell size used by the SpatialHash broadphase. " +
+            "A value close to the size of the typical object gives the best results.")
+    public void SetSpatialHashCellSize(float cellSize) {
+        if (cellSize <= 0) {
+            ReportError("Invalid cell size: it must be greater than zero.");
+            return;
+        }
+        this.spatialHashCellSize = cellSize;
+        synchronized (this.objects) {
+            if (world.getBroadphase() instanceof SpatialHashGrid) {
+                ((SpatialHashGrid) world.getBroadphase()).setCellSize(cellSize);
+            }
         }
     }
     
-    private void handleBilliardBallCollision(PhysicsObject obj1, PhysicsObject obj2) {
-        // Calcula o vetor normal da colisão
-        Vector2D collisionVector = obj1.getPosition().subtract2D(obj2.getPosition());
-        collisionVector.normalize();
-
-        // Calcula a diferença de velocidade
-        Vector2D velocityDifference = obj1.getVelocity().subtract2D(obj2.getVelocity());
-
-        // Calcula a velocidade relativa ao longo do vetor normal da colisão
-        float velocityAlongNormal = velocityDifference.dot(collisionVector);
-
-        // Não prossegue se os objetos estão se afastando
-        if (velocityAlongNormal > 0) {
+    @SimpleFunction(description = "Sets how much each object's box is enlarged in the AABBTree broadphase. " +
+            "Objects that move less than this margin are not reinserted in the tree.")
+    public void SetAABBTreeMargin(float margin) {
+        if (margin < 0) {
+            ReportError("Invalid margin: it cannot be negative.");
             return;
         }
-
-        // Calcula o coeficiente de restituição (e = 1 para uma colisão perfeitamente elástica)
-        float restitution = 1.0f;
-
-        // Calcula o escalar de impulso que deve ser aplicado aos objetos
-        float j = -(1 + restitution) * velocityAlongNormal;
-        j /= (1 / obj1.getMass() + 1 / obj2.getMass());
-
-        // Aplica o impulso aos objetos
-        Vector2D impulse = collisionVector.multiply(j);
-        obj1.setVelocity(obj1.getVelocity().add2D(impulse.divide(obj1.getMass())));
-        obj2.setVelocity(obj2.getVelocity().subtract2D(impulse.divide(obj2.getMass())));
+        this.aabbTreeMargin = margin;
+        synchronized (this.objects) {
+            if (world.getBroadphase() instanceof DynamicAABBTree) {
+                ((DynamicAABBTree) world.getBroadphase()).setMargin(margin);
+            }
+        }
+    }
+    
+    @SimpleFunction(description = "Sets how many threads integrate the objects and test the collision pairs in parallel. " +
+            "Use 1 to keep the simulation on a single thread. The results do not depend on the number of threads.")
+    public void SetParallelism(int threads) {
+        if (threads <= 0) {
+            ReportError("Invalid number of threads: it must be greater than zero.");
+            return;
+        }
+        world.setParallelLoop(new ParallelLoop(threads, World.PARALLEL_CHUNK_SIZE, world.getParallelLoop().getThreshold()));
+    }
+    
+    @SimpleFunction(description = "Sets the minimum number of objects (or collision pairs) for the integration (or the collision tests) to run in parallel.")
+    public void SetParallelThreshold(int objectCount) {
+        if (objectCount < 0) {
+            ReportError("Invalid threshold: it cannot be negative.");
+            return;
+        }
+        world.getParallelLoop().setThreshold(objectCount);
+    }
+    
+    @SimpleFunction(description = "Enables or disables the contact solver. When enabled, touching objects push each other apart " +
+            "with impulses (mass and friction are taken into account), stacks settle instead of sinking into each other, " +
+            "and OnCollision fires only when a contact begins.")
+    public void SetContactSolverEnabled(boolean enabled) {
+        world.setContactSolverEnabled(enabled);
+    }
+    
+    @SimpleFunction(description = "Sets how many iterations the contact solver runs per step. More iterations make stacks stiffer.")
+    public void SetSolverIterations(int iterations) {
+        if (iterations <= 0) {
+            ReportError("Invalid number of iterations: it must be greater than zero.");
+            return;
+        }
+        world.getContactSolver().setIterations(iterations);
+    }
+    
+    @SimpleFunction(description = "Enables or disables sleeping. Objects at rest fall asleep after the sleep time and are " +
+            "skipped by the simulation until something touches or changes them.")
+    public void SetSleepingEnabled(boolean enabled) {
+        world.setSleepingEnabled(enabled);
+    }
+    
+    @SimpleFunction(description = "Sets how many seconds an object must stay at rest before falling asleep.")
+    public void SetSleepTime(float seconds) {
+        if (seconds <= 0) {
+            ReportError("Invalid sleep time: it must be greater than zero.");
+            return;
+        }
+        world.setTimeToSleep(seconds);
+    }
+    
+    @SimpleFunction(description = "Checks whether the specified object is asleep.")
+    public boolean IsSleeping(int id) {
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            return obj != null && obj.isSleeping();
+        }
+    }
+    
+    @SimpleFunction(description = "Wakes up the specified object and the objects touching it.")
+    public void WakeObject(int id) {
+        world.wake(id);
+    }
+    
+    @SimpleFunction(description = "Enables or disables the step timing statistics. While enabled, every step measures how long " +
+            "the integration, broadphase, narrowphase, platform, following and event phases take. See GetStepStats.")
+    public void SetStepStatsEnabled(boolean enabled) {
+        world.setStepStatsEnabled(enabled);
+    }
+    
+    @SimpleFunction(description = "Returns the step timing statistics as a list with one item per phase (Integration, Broadphase, " +
+            "Narrowphase, Platforms, Following, Events and Total). Each item is [phase, steps, last, mean, p50, p95, p99, max], " +
+            "with the times in microseconds. Percentiles are accurate to within 12.5%.")
+    public YailList GetStepStats() {
+        StepStats stats = world.getStepStats();
+        List<YailList> phases = new ArrayList<>();
+        for (int phase = 0; phase < StepStats.PHASES; phase++) {
+            phases.add(YailList.makeList(new Object[]{
+                StepStats.getPhaseName(phase),
+                stats.getStepCount(),
+                stats.getLastNanos(phase) / 1000.0f,
+                stats.getMeanNanos(phase) / 1000.0f,
+                stats.getPercentileNanos(phase, 0.5) / 1000.0f,
+                stats.getPercentileNanos(phase, 0.95) / 1000.0f,
+                stats.getPercentileNanos(phase, 0.99) / 1000.0f,
+                stats.getMaxNanos(phase) / 1000.0f
+            }));
+        }
+        return YailList.makeList(phases);
+    }
+    
+    @SimpleFunction(description = "Clears the step timing statistics collected so far.")
+    public void ResetStepStats() {
+        world.getStepStats().reset();
+    }
+    
+    // Executa os passos fixos acumulados desde a última chamada e redesenha uma única vez
+    private void stepFrame(long nowNanos) {
+        int steps = timestep.advance(nowNanos);
+        for (int i = 0; i < steps; i++) {
+            update(timestep.getStepSeconds());
+        }
+        
+        renderAlpha = timestep.getAlpha();
+        RedrawCanvas(-1, showCollisionBoxes);
     }
+    
+    private boolean areObjectsClose(PhysicsObject obj1, PhysicsObject obj2) {
+        float maxDistance = 100.0f; // Define o máximo de distância para considerar colisões
+        float dx = obj1.getPosition().x - obj2.getPosition().x;
+        float dy = obj1.getPosition().y - obj2.getPosition().y;
+        return (dx * dx + dy * dy) <= (maxDistance * maxDistance);
+    }
+    
+    public synchronized void update(final float deltaTime) {
+        try {
+            world.setBounds(canvasWidth, canvasHeight);
+            world.step(deltaTime);
 
-    private void checkCollisionsForObject(PhysicsObject obj) {
-        int objId = findObjectId(obj);
+            if (isParallaxEnabled) {
+                synchronized (this.layerMap) {
+                    for (Layer layer : new ArrayList<>(layerMap.values())) {
+                        if (layer.parallaxIntensity > 0.0f) {
+                            updateLayerParallax(layer);
+                        }
+                    }
+                }
+            }
 
-        for (Map.Entry<Integer, PhysicsObject> entry : objects.entrySet()) {
-            int otherId = entry.getKey();
-            if (objId != otherId) {
-                PhysicsObject other = entry.getValue();
-                if (obj.collidesWith(other)) {
-                	checkCollisions(obj, other);
+            synchronized (this.objects) {
+                synchronized (this.sprites) {
+                    for (Map.Entry<Integer, Sprite> entry : new HashMap<>(sprites).entrySet()) {
+                        Sprite sprite = entry.getValue();
+                        PhysicsObject obj = objects.get(entry.getKey());
+                        if (obj != null && !obj.isSleeping()) {
+                            sprite.updatePosition(obj.getX(), obj.getY());
+                        }
+                    }
                 }
             }
+            
+        } catch (Exception e) {
+            Log.e(LOG_NAME, "Erro durante a atualização do ciclo de física", e);
+        } finally {
+            OnUpdate();
         }
     }
+    
     /*
      * END: Treat Physics individually for each object
      */
@@ -518,258 +1074,422 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
  // Método adicional para atualizar a velocidade angular
     @SimpleFunction(description = "Updates the angular velocity of an object.")
     public void UpdateAngularVelocity(int id, float angularVelocity) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.setAngularVelocity(angularVelocity);
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setAngularVelocity(angularVelocity);
+                world.record(ReplayRecorder.ANGULAR, id, 0, angularVelocity);
             
-         // Atualiza o estado onPlatform do objeto
-            updateOnPlatformState(obj);
+             // Atualiza o estado onPlatform do objeto
+                world.updateOnPlatformState(obj);
+            }
         }
     }
 
     // Método para aplicar torque a um objeto
     @SimpleFunction(description = "Applies torque to an object.")
     public void ApplyTorque(int id, float torque) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.applyTorque(torque);
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.applyTorque(torque);
+                world.record(ReplayRecorder.ANGULAR, id, 1, torque);
             
-         // Atualiza o estado onPlatform do objeto
-            updateOnPlatformState(obj);
+             // Atualiza o estado onPlatform do objeto
+                world.updateOnPlatformState(obj);
+            }
         }
     }
 
     // Método para obter a velocidade angular de um objeto
     @SimpleFunction(description = "Gets the angular velocity of an object.")
     public float GetAngularVelocity(int id) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            return obj.getAngularVelocity();
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                return obj.getAngularVelocity();
+            }
+            return 0f;
         }
-        return 0f;
     }
     
     @SimpleFunction(description = "Returns the mass of an object.")
     public float GetObjectMass(int id) {
-        PhysicsObject obj = objects.get(id);
-        return obj != null ? obj.getMass() : 0f;
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            return obj != null ? obj.getMass() : 0f;
+        }
     }
     
     @SimpleFunction(description = "Makes an object jump by applying an upward force for a short duration.")
     public void MakeObjectJump(final int id, final float jumpStrength, final int durationMs) {
-        final PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            final float jumpForce = jumpStrength * obj.getMass();
-            obj.applyForce(new Vector2D(0, jumpForce));
+        synchronized (this.objects) {
+            final PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                final float jumpForce = jumpStrength * obj.getMass();
+                obj.applyForce(new Vector2D(0, jumpForce));
+                world.record(ReplayRecorder.FORCE, id, 0, jumpForce);
 
-            if (flagLog) Log.d(LOG_NAME, "Salto iniciado com força: " + jumpForce);
+                if (flagLog) Log.d(LOG_NAME, "Salto iniciado com força: " + jumpForce);
 
-            new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                	if (flagLog) Log.d(LOG_NAME, "Finalizando salto para o objeto: " + id);
-                    obj.applyForce(new Vector2D(0, 0));
-                }
-            }, durationMs);
+                runAfter(durationMs, new Runnable() {
+                    @Override
+                    public void run() {
+                    	if (flagLog) Log.d(LOG_NAME, "Finalizando salto para o objeto: " + id);
+                        synchronized (objects) {
+                            obj.applyForce(new Vector2D(0, 0));
+                            world.record(ReplayRecorder.FORCE, id, 0, 0);
+                        }
+                    }
+                });
             
-         // Atualiza o estado onPlatform do objeto
-            updateOnPlatformState(obj);
+             // Atualiza o estado onPlatform do objeto
+                world.updateOnPlatformState(obj);
+            }
         }
     }
 
     @SimpleFunction(description = "Sets the velocity of an object.")
     public void SetObjectVelocity(int id, float velocityX, float velocityY) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.setVelocity(new Vector2D(velocityX, velocityY));
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setVelocity(new Vector2D(velocityX, velocityY));
+                world.record(ReplayRecorder.VELOCITY, id, velocityX, velocityY);
             
-         // Atualiza o estado onPlatform do objeto
-            updateOnPlatformState(obj);
+             // Atualiza o estado onPlatform do objeto
+                world.updateOnPlatformState(obj);
+            }
         }
     }
 
     @SimpleFunction(description = "Sets the size of an object.")
     public void SetObjectSize(int id, float width, float height) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.setSize(new Vector2D(width, height));
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setSize(new Vector2D(width, height));
+                recordBody(obj);
+            }
         }
     }
     
     @SimpleFunction(description = "Sets the position of an object.")
     public void SetObjectPosition(int id, float x, float y) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            // Obtém a sprite associada ao objeto de física
-            Sprite sprite = sprites.get(id);
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                // Obtém a sprite associada ao objeto de física
+                Sprite sprite = sprites.get(id);
             
-            if (sprite != null) {
-                // Calcula a posição ajustada com base no ponto de origem da sprite
-                Vector2D originOffset = sprite.calculateOriginOffset();
+                if (sprite != null) {
+                    // Calcula a posição ajustada com base no ponto de origem da sprite
+                    Vector2D originOffset = sprite.calculateOriginOffset();
                 
-                // Ajusta as coordenadas (x, y) para que o ponto de origem especificado da sprite esteja nessas coordenadas
-                float adjustedX = x + originOffset.x;
-                float adjustedY = y + originOffset.y;
+                    // Ajusta as coordenadas (x, y) para que o ponto de origem especificado da sprite esteja nessas coordenadas
+                    float adjustedX = x + originOffset.x;
+                    float adjustedY = y + originOffset.y;
                 
-                // Atualiza a posição do objeto de física
-                obj.setPosition(new Vector2D(adjustedX, adjustedY));
-            } else {
-                // Se não houver uma sprite associada, simplesmente atualiza a posição do objeto de física
-                obj.setPosition(new Vector2D(x, y));
-            }
+                    // Atualiza a posição do objeto de física
+                    obj.setPosition(new Vector2D(adjustedX, adjustedY));
+                } else {
+                    // Se não houver uma sprite associada, simplesmente atualiza a posição do objeto de física
+                    obj.setPosition(new Vector2D(x, y));
+                }
+                obj.savePreviousState(); // Teletransporte: não interpola a partir da posição antiga
+                world.record(ReplayRecorder.POSITION, id, obj.getX(), obj.getY());
 
-            // Atualiza o estado de estar sobre uma plataforma, se necessário
-            updateOnPlatformState(obj);
-            
-            // Se as caixas de colisão estão ativadas, redesenha o canvas com elas
-            if (showCollisionBoxes) {
-                RedrawCanvas(id, showCollisionBoxes);
+                // Atualiza o estado de estar sobre uma plataforma, se necessário
+                world.updateOnPlatformState(obj);
             }
         }
+
+        // Se as caixas de colisão estão ativadas, redesenha o canvas com elas
+        if (showCollisionBoxes && objects.get(id) != null) {
+            RedrawCanvas(id, showCollisionBoxes);
+        }
     }
     
     @SimpleFunction(description = "Sets an object as a platform.")
     public void SetObjectAsPlatform(int id, boolean isPlatform) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.setAsPlatform(isPlatform);
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                world.setPlatform(obj, isPlatform);
+            }
+        }
+    }
+    
+    @SimpleFunction(description = "Marks an object as a bullet. The movement of a bullet is swept against the platforms " +
+            "every step, so fast objects stop on thin platforms instead of passing through them.")
+    public void SetObjectBullet(int id, boolean isBullet) {
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                world.setBullet(obj, isBullet);
+            }
+        }
+    }
+    
+    @SimpleFunction(description = "Turns an object into a circle with the given radius. The object's width and height " +
+            "become the diameter and the circle is centered in them.")
+    public void SetObjectCircle(int id, float radius) {
+        if (radius <= 0) {
+            ReportError("Invalid radius: it must be greater than zero.");
+            return;
+        }
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setSize(new Vector2D(radius * 2, radius * 2));
+                obj.setShape(Shape.circle());
+                recordBody(obj);
+                world.record(ReplayRecorder.SHAPE, id, ReplayRecorder.SHAPE_CIRCLE, 0, 0);
+            }
+        }
+    }
+    
+    @SimpleFunction(description = "Turns an object into a convex polygon. Points is a list of [x, y] pairs relative to " +
+            "the object's position. The object's position, width and height are adjusted to the bounds of the points.")
+    public void SetObjectPolygon(int id, YailList points) {
+        Object[] items = points.toArray();
+        float[] xs = new float[items.length];
+        float[] ys = new float[items.length];
+        try {
+            for (int i = 0; i < items.length; i++) {
+                Object[] point = ((YailList) items[i]).toArray();
+                xs[i] = Float.parseFloat(point[0].toString());
+                ys[i] = Float.parseFloat(point[1].toString());
+            }
+        } catch (Exception e) {
+            ReportError("Invalid polygon: each point must be a list [x, y].");
+            return;
+        }
+
+        Shape shape = Shape.polygon(xs, ys);
+        if (shape == null) {
+            ReportError("Invalid polygon: it needs at least 3 distinct points and must be convex.");
+            return;
+        }
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < xs.length; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+
+        // A caixa do objeto passa a envolver exatamente os pontos, que ficam relativos ao canto dela
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setPosition(obj.getX() + minX, obj.getY() + minY);
+                obj.savePreviousState();
+                obj.setSize(new Vector2D(maxX - minX, maxY - minY));
+                obj.setShape(shape.translate(-minX, -minY));
+
+                world.record(ReplayRecorder.POSITION, id, obj.getX(), obj.getY());
+                recordBody(obj);
+                for (int i = 0; i < xs.length; i++) {
+                    world.record(ReplayRecorder.VERTEX, id, xs[i], ys[i]);
+                }
+                world.record(ReplayRecorder.SHAPE, id, ReplayRecorder.SHAPE_POLYGON, -minX, -minY);
+            }
+        }
+    }
+    
+    @SimpleFunction(description = "Turns an object back into a plain box with its current width and height.")
+    public void SetObjectBox(int id) {
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setShape(null);
+                world.record(ReplayRecorder.SHAPE, id, ReplayRecorder.SHAPE_BOX, 0, 0);
+            }
         }
     }
     
     @SimpleFunction(description = "Gets the force applied on an object along the X-axis.")
     public float GetObjectForceX(int id) {
-        PhysicsObject obj = objects.get(id);
-        return obj != null ? obj.getAppliedForce().x : 0f;
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            return obj != null ? obj.getAppliedForce().x : 0f;
+        }
     }
 
     @SimpleFunction(description = "Gets the force applied on an object along the Y-axis.")
     public float GetObjectForceY(int id) {
-        PhysicsObject obj = objects.get(id);
-        return obj != null ? obj.getAppliedForce().y : 0f;
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            return obj != null ? obj.getAppliedForce().y : 0f;
+        }
     }
     
     @SimpleFunction(description = "Verifica se o objeto especificado está sobre uma plataforma.")
     public boolean IsOnPlatform(int objectId) {
-        PhysicsObject obj = objects.get(objectId);
-        if (obj != null) {
-            return obj.isOnPlatform();
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(objectId);
+            if (obj != null) {
+                return obj.isOnPlatform();
+            }
+            return false;
         }
-        return false;
     }
     
     @SimpleFunction(description = "Checks whether the specified object is stopped.")
     public boolean IsStationary(int id) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            return Math.abs(obj.getVelocity().x) < EPSILON && Math.abs(obj.getVelocity().y) < EPSILON;
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                return Math.abs(obj.getVelocity().x) < EPSILON && Math.abs(obj.getVelocity().y) < EPSILON;
+            }
+            return true; // Considera parado se o objeto não existir
         }
-        return true; // Considera parado se o objeto não existir
     }
 
     @SimpleFunction(description = "Checks whether the specified object is skipping.")
     public boolean IsJumping(int id) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            return !obj.isOnPlatform() && Math.abs(obj.getVelocity().y) > EPSILON;
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                return !obj.isOnPlatform() && Math.abs(obj.getVelocity().y) > EPSILON;
+            }
+            return false;
         }
-        return false;
     }
 
     @SimpleFunction(description = "Checks whether the specified object is moving.")
     public boolean IsMoving(int id) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            return (Math.abs(obj.getVelocity().x) > EPSILON || Math.abs(obj.getVelocity().y) > EPSILON) && !IsJumping(id);
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                return (Math.abs(obj.getVelocity().x) > EPSILON || Math.abs(obj.getVelocity().y) > EPSILON) && !IsJumping(id);
+            }
+            return false;
         }
-        return false;
     }
     
  // Método para definir a posição X de um objeto
     @SimpleFunction(description = "Sets the X position of an object.")
     public void SetObjectPositionX(int id, float x) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.setPosition(new Vector2D(x, obj.getPosition().y));
-            updateOnPlatformState(obj);
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setPosition(new Vector2D(x, obj.getPosition().y));
+                obj.savePreviousState();
+                world.record(ReplayRecorder.POSITION, id, obj.getX(), obj.getY());
+                world.updateOnPlatformState(obj);
+            }
         }
     }
 
     // Método para definir a posição Y de um objeto
     @SimpleFunction(description = "Sets the Y position of an object.")
     public void SetObjectPositionY(int id, float y) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.setPosition(new Vector2D(obj.getPosition().x, y));
-            updateOnPlatformState(obj);
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setPosition(new Vector2D(obj.getPosition().x, y));
+                obj.savePreviousState();
+                world.record(ReplayRecorder.POSITION, id, obj.getX(), obj.getY());
+                world.updateOnPlatformState(obj);
+            }
         }
     }
 
     // Método para definir a velocidade X de um objeto
     @SimpleFunction(description = "Sets the X velocity of an object.")
     public void SetObjectVelocityX(int id, float velocityX) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.setVelocity(new Vector2D(velocityX, obj.getVelocity().y));
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setVelocity(new Vector2D(velocityX, obj.getVelocity().y));
+                recordVelocity(obj);
+            }
         }
     }
 
     // Método para definir a velocidade Y de um objeto
     @SimpleFunction(description = "Sets the Y velocity of an object.")
     public void SetObjectVelocityY(int id, float velocityY) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.setVelocity(new Vector2D(obj.getVelocity().x, velocityY));
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setVelocity(new Vector2D(obj.getVelocity().x, velocityY));
+                recordVelocity(obj);
+            }
         }
     }
 
     // Método para definir a altura de um objeto
     @SimpleFunction(description = "Sets the height of an object.")
     public void SetObjectHeight(int id, float height) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.setSize(new Vector2D(obj.getSize().x, height));
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setSize(new Vector2D(obj.getSize().x, height));
+                recordBody(obj);
+            }
         }
     }
 
     // Método para definir a largura de um objeto
     @SimpleFunction(description = "Sets the width of an object.")
     public void SetObjectWidth(int id, float width) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.setSize(new Vector2D(width, obj.getSize().y));
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setSize(new Vector2D(width, obj.getSize().y));
+                recordBody(obj);
+            }
         }
     }
 
     // Método para definir a força aplicada no eixo X de um objeto
     @SimpleFunction(description = "Sets the force applied on an object along the X-axis.")
     public void SetObjectForceX(int id, float forceX) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.applyForce(new Vector2D(forceX, obj.getAppliedForce().y));
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.applyForce(new Vector2D(forceX, obj.getAppliedForce().y));
+                world.record(ReplayRecorder.FORCE, id, obj.getAppliedForce().x, obj.getAppliedForce().y);
+            }
         }
     }
 
     // Método para definir a força aplicada no eixo Y de um objeto
     @SimpleFunction(description = "Sets the force applied on an object along the Y-axis.")
     public void SetObjectForceY(int id, float forceY) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.applyForce(new Vector2D(obj.getAppliedForce().x, forceY));
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.applyForce(new Vector2D(obj.getAppliedForce().x, forceY));
+                world.record(ReplayRecorder.FORCE, id, obj.getAppliedForce().x, obj.getAppliedForce().y);
+            }
         }
     }
 
     // Método para definir a gravidade global
     @SimpleFunction(description = "Sets the global gravity.")
     public void SetGlobalGravity(float x, float y) {
-        this.gravity = new Vector2D(x, y);
+        synchronized (this.objects) {
+            world.setGravity(x, y);
+            world.wakeAll();
+            world.record(ReplayRecorder.GRAVITY, 0, x, y, 1);
+        }
     }
     
  // Método para definir a massa de um objeto
     @SimpleFunction(description = "Sets the mass of an object.")
     public void SetObjectMass(int id, float mass) {
-        PhysicsObject obj = objects.get(id);
-        if (obj != null) {
-            obj.setMass(mass);
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.setMass(mass);
+                recordBody(obj);
+            }
         }
     }
     
@@ -779,7 +1499,7 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
         updateHandler.removeCallbacks(updateTask);
 
         // Limpa a coleção de objetos físicos
-        objects.clear();
+        world.clearBodies();
 
         // Fecha o serviço executor para liberar recursos do sistema
         if (!collisionExecutor.isShutdown()) {
@@ -806,6 +1526,8 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
             scheduler.shutdownNow();
         }
         
+        world.getParallelLoop().shutdown();
+        
         // Reciclar todos os bitmaps de camadas
         for (Layer layer : layerMap.values()) {
             recycleBitmap(layer.bitmap);
@@ -1141,7 +1863,10 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
             return;
         }
 
-        Vector2D objectPosition = targetObject.getPosition();
+        Vector2D objectPosition;
+        synchronized (this.objects) {
+            objectPosition = targetObject.getPosition();
+        }
         
         if (this.isParallaxEnabled) {
 	        for (Layer layer : layerMap.values()) {
@@ -1318,7 +2043,11 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
         }
 
         // Define a nova posição para o objeto
-        obj.setPosition(new Vector2D(newX, newY));
+        synchronized (this.objects) {
+            obj.setPosition(new Vector2D(newX, newY));
+            obj.savePreviousState();
+            world.record(ReplayRecorder.POSITION, objectId, newX, newY);
+        }
 
         // Redesenha o canvas com as caixas de colisão atualizadas
         RedrawCanvas(objectId, showCollisionBoxes);
@@ -1330,12 +2059,18 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
     
     @SimpleFunction(description = "Triggers a timed event after a delay.")
     public void TriggerTimedEvent(final int id, final int triggerTimeMs) {
-        new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
+        runAfter(triggerTimeMs, new Runnable() {
             @Override
             public void run() {
-                TimedEvent(id);
+                // O evento sempre é entregue no thread da UI
+                uiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        TimedEvent(id);
+                    }
+                });
             }
-        }, triggerTimeMs); // Atrasa por triggerTimeMs milissegundos
+        }); // Atrasa por triggerTimeMs milissegundos
     }
     
     /*
@@ -1346,7 +2081,9 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
         PhysicsObject targetObject = objects.get(objectId);
 
         if (targetObject != null) {
-            camera.update(targetObject);
+            synchronized (this.objects) {
+                camera.update(targetObject);
+            }
         } else {
             // Se não houver um objeto com a ID fornecida, apenas ajusta a posição da câmera
             camera.setPosition(x, y);
@@ -1410,49 +2147,49 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
     
     @SimpleFunction(description = "Oscillates an object horizontally.")
     public void OscillateObjectHorizontally(int objectId, float amplitude, long oscillationTime) {
-        PhysicsObject obj = objects.get(objectId);
-        if (obj != null) {
-            obj.startOscillatingHorizontally(amplitude, oscillationTime);
-        } else {
+        boolean found;
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(objectId);
+            found = obj != null;
+            if (found) {
+                obj.startOscillatingHorizontally(amplitude, oscillationTime);
+                world.record(ReplayRecorder.OSCILLATE, objectId, 0, amplitude, oscillationTime);
+            }
+        }
+        if (!found) {
         	ReportError("Error! The object was not found!");
         }
     }
 
     @SimpleFunction(description = "Oscillates an object vertically.")
     public void OscillateObjectVertically(int objectId, float amplitude, long oscillationTime) {
-        PhysicsObject obj = objects.get(objectId);
-        if (obj != null) {
-            obj.startOscillatingVertically(amplitude, oscillationTime);
-        } else {
+        boolean found;
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(objectId);
+            found = obj != null;
+            if (found) {
+                obj.startOscillatingVertically(amplitude, oscillationTime);
+                world.record(ReplayRecorder.OSCILLATE, objectId, 1, amplitude, oscillationTime);
+            }
+        }
+        if (!found) {
         	ReportError("Error! The object was not found!");
         }
     }
     
     @SimpleFunction(description = "Creates a new container with the specified parent object.")
     public void CreateContainer(int parentId) {
-        PhysicsObject parent = objects.get(parentId);
-        if (parent != null) {
-            Container container = new Container(parent);
-            containers.put(parentId, container);
-        }
+        world.createContainer(parentId);
     }
 
     @SimpleFunction(description = "Adds a child object to the specified container.")
     public void AddChildToContainer(int containerId, int childId) {
-        Container container = containers.get(containerId);
-        PhysicsObject child = objects.get(childId);
-        if (container != null && child != null) {
-            container.addChild(child);
-        }
+        world.addToContainer(containerId, childId);
     }
 
     @SimpleFunction(description = "Removes a child object from the specified container.")
     public void RemoveChildFromContainer(int containerId, int childId) {
-        Container container = containers.get(containerId);
-        PhysicsObject child = objects.get(childId);
-        if (container != null && child != null) {
-            container.removeChild(child);
-        }
+        world.removeFromContainer(containerId, childId);
     }
     
     
@@ -1461,41 +2198,14 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
      */
     @SimpleFunction(description = "Make an object follow another object within a specific distance.")
     public void StartFollowing(int followerId, int leaderId, float maxFollowDistance, float stopFollowDistance) {
-        followingObjects.put(followerId, new FollowInfo(followerId, leaderId, maxFollowDistance, stopFollowDistance));
-    }
-
-    private void updateFollowing(float deltaTime) {
-        for (FollowInfo followInfo : followingObjects.values()) {
-            PhysicsObject follower = objects.get(followInfo.getFollowerId());
-            PhysicsObject leader = objects.get(followInfo.getLeaderId());
-
-            if (follower == null || leader == null) {
-                continue;
-            }
-
-            Vector2D followerPos = follower.getPosition();
-            Vector2D leaderPos = leader.getPosition();
-            float distance = Vector2D.distance(followerPos, leaderPos);
-
-            if (distance <= followInfo.getMaxFollowDistance() && distance > followInfo.getStopFollowDistance()) {
-                Vector2D direction = new Vector2D(leaderPos.x - followerPos.x, leaderPos.y - followerPos.y);
-                direction.normalize();
-
-                // Certifique-se de que getSpeed() está definido em PhysicsObject
-                float speed = follower.getSpeed(); 
-
-                follower.setVelocity(new Vector2D(direction.x * speed, direction.y * speed));
-            } else if (distance > followInfo.getMaxFollowDistance()) {
-                follower.setVelocity(new Vector2D(0, 0));
-            }
-        }
+        world.startFollowing(followerId, leaderId, maxFollowDistance, stopFollowDistance);
     }
 
     public void updateFollowingAsync(final float deltaTime) {
         executor.submit(new Runnable() {
             @Override
             public void run() {
-                updateFollowing(deltaTime);
+                world.updateFollowing();
             }
         });
     }
@@ -1517,24 +2227,26 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
     @SimpleFunction(description = "Predicts the final positions of all objects after a given time interval.")
     public YailList PredictFinalPositions(float timeInterval) {
         ArrayList<YailList> finalPositions = new ArrayList<>();
-        for (Map.Entry<Integer, PhysicsObject> entry : objects.entrySet()) {
-            int id = entry.getKey();
-            PhysicsObject obj = entry.getValue();
+        synchronized (this.objects) {
+            for (int i = 0; i < objects.size(); i++) {
+                int id = objects.getId(i);
+                PhysicsObject obj = objects.getAt(i);
             
-            // Calcula a posição final baseada na velocidade atual e forças aplicadas
-            Vector2D finalPosition = calculateFinalPosition(obj, timeInterval);
+                // Calcula a posição final baseada na velocidade atual e forças aplicadas
+                Vector2D finalPosition = calculateFinalPosition(obj, timeInterval);
             
-            // Adiciona a posição final à lista de resultados
-            finalPositions.add(YailList.makeList(new Object[]{id, finalPosition.x, finalPosition.y}));
-        }
+                // Adiciona a posição final à lista de resultados
+                finalPositions.add(YailList.makeList(new Object[]{id, finalPosition.x, finalPosition.y}));
+            }
         
-        return YailList.makeList(finalPositions);
+            return YailList.makeList(finalPositions);
+        }
     }
 
     // Método auxiliar para calcular a posição final de um objeto
     private Vector2D calculateFinalPosition(PhysicsObject obj, float timeInterval) {
         Vector2D acceleration = new Vector2D(obj.getAppliedForce().x / obj.getMass(), obj.getAppliedForce().y / obj.getMass());
-        acceleration.add(gravity); // Considera a gravidade
+        acceleration.add(world.getGravity()); // Considera a gravidade
         
         // Calcula a posição final baseada na fórmula do movimento uniformemente acelerado
         float finalX = obj.getPosition().x + obj.getVelocity().x * timeInterval + 0.5f * acceleration.x * timeInterval * timeInterval;
@@ -1545,18 +2257,20 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
     
     @SimpleFunction(description = "Predicts the velocity of an object after a given time interval.")
     public YailList PredictFinalVelocity(int objectId, float timeInterval) {
-        PhysicsObject obj = objects.get(objectId);
-        if (obj != null) {
-            Vector2D acceleration = new Vector2D(obj.getAppliedForce().x / obj.getMass(), obj.getAppliedForce().y / obj.getMass());
-            acceleration.add(gravity); // Considera a gravidade
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(objectId);
+            if (obj != null) {
+                Vector2D acceleration = new Vector2D(obj.getAppliedForce().x / obj.getMass(), obj.getAppliedForce().y / obj.getMass());
+                acceleration.add(world.getGravity()); // Considera a gravidade
             
-            // Calcula a velocidade final
-            float finalVx = obj.getVelocity().x + acceleration.x * timeInterval;
-            float finalVy = obj.getVelocity().y + acceleration.y * timeInterval;
+                // Calcula a velocidade final
+                float finalVx = obj.getVelocity().x + acceleration.x * timeInterval;
+                float finalVy = obj.getVelocity().y + acceleration.y * timeInterval;
             
-            return YailList.makeList(new Object[]{finalVx, finalVy});
+                return YailList.makeList(new Object[]{finalVx, finalVy});
+            }
+            return YailList.makeList(new Object[]{0f, 0f}); // Retorna velocidade zero se o objeto não for encontrado
         }
-        return YailList.makeList(new Object[]{0f, 0f}); // Retorna velocidade zero se o objeto não for encontrado
     }
     
     /*
@@ -1565,44 +2279,49 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
     
     @SimpleFunction(description = "Calculates the angle of an object's velocity vector relative to the horizontal axis.")
     public float CalculateObjectAngle(int objectId) {
-        PhysicsObject obj = objects.get(objectId);
-        if (obj != null) {
-            Vector2D velocity = obj.getVelocity();
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(objectId);
+            if (obj != null) {
+                Vector2D velocity = obj.getVelocity();
             
-            // Calcula o ângulo em radianos
-            double angleRadians = Math.atan2(velocity.y, velocity.x);
+                // Calcula o ângulo em radianos
+                double angleRadians = Math.atan2(velocity.y, velocity.x);
             
-            // Converte o ângulo para graus
-            double angleDegrees = Math.toDegrees(angleRadians);
+                // Converte o ângulo para graus
+                double angleDegrees = Math.toDegrees(angleRadians);
             
-            // Normaliza o ângulo para um intervalo de 0 a 360 graus
-            double normalizedAngle = (angleDegrees + 360) % 360;
+                // Normaliza o ângulo para um intervalo de 0 a 360 graus
+                double normalizedAngle = (angleDegrees + 360) % 360;
             
-            return (float)normalizedAngle;
+                return (float)normalizedAngle;
+            }
+            return 0f; // Retorna 0 se o objeto não for encontrado
         }
-        return 0f; // Retorna 0 se o objeto não for encontrado
     }
     
     @SimpleFunction(description = "Inverts the direction of an object upon collision.")
     public void InvertObjectDirectionOnCollision(int objectId, String collisionSide) {
-        PhysicsObject obj = objects.get(objectId);
-        if (obj != null) {
-            switch (collisionSide.toLowerCase()) {
-                case "horizontal":
-                    // Inverte a direção horizontal (eixo X)
-                    obj.setVelocity(new Vector2D(-obj.getVelocity().x, obj.getVelocity().y));
-                    break;
-                case "vertical":
-                    // Inverte a direção vertical (eixo Y)
-                    obj.setVelocity(new Vector2D(obj.getVelocity().x, -obj.getVelocity().y));
-                    break;
-                case "both":
-                    // Inverte ambas as direções
-                    obj.setVelocity(new Vector2D(-obj.getVelocity().x, -obj.getVelocity().y));
-                    break;
-                default:
-                    // Se o lado da colisão não for reconhecido, não faz nada
-                    break;
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(objectId);
+            if (obj != null) {
+                switch (collisionSide.toLowerCase()) {
+                    case "horizontal":
+                        // Inverte a direção horizontal (eixo X)
+                        obj.setVelocity(new Vector2D(-obj.getVelocity().x, obj.getVelocity().y));
+                        break;
+                    case "vertical":
+                        // Inverte a direção vertical (eixo Y)
+                        obj.setVelocity(new Vector2D(obj.getVelocity().x, -obj.getVelocity().y));
+                        break;
+                    case "both":
+                        // Inverte ambas as direções
+                        obj.setVelocity(new Vector2D(-obj.getVelocity().x, -obj.getVelocity().y));
+                        break;
+                    default:
+                        // Se o lado da colisão não for reconhecido, não faz nada
+                        break;
+                }
+                recordVelocity(obj);
             }
         }
     }
@@ -1612,7 +2331,12 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
         PhysicsObject obj1 = objects.get(objectId1);
         PhysicsObject obj2 = objects.get(objectId2);
         
-        if (obj1 != null && obj2 != null) {
+        if (obj1 == null || obj2 == null) {
+            return;
+        }
+
+        boolean horizontalCollision;
+        synchronized (this.objects) {
         	// Calcula o centro de massa de cada objeto
             Vector2D center1 = new Vector2D(obj1.getPosition().x + obj1.getSize().x / 2, obj1.getPosition().y + obj1.getSize().y / 2);
             Vector2D center2 = new Vector2D(obj2.getPosition().x + obj2.getSize().x / 2, obj2.getPosition().y + obj2.getSize().y / 2);
@@ -1621,7 +2345,7 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
             Vector2D delta = center1.subtract2D(center2);
             
             // Determina a direção da colisão com base na diferença de posição e velocidade dos objetos
-            boolean horizontalCollision = Math.abs(delta.x) > Math.abs(delta.y);
+            horizontalCollision = Math.abs(delta.x) > Math.abs(delta.y);
             boolean fromLeftOrRight = obj1.getVelocity().x * delta.x > 0;
             boolean verticalCollision = !horizontalCollision;
             boolean fromTopOrBottom = obj1.getVelocity().y * delta.y > 0;
@@ -1635,9 +2359,11 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
                 obj1.setVelocity(new Vector2D(obj1.getVelocity().x, -obj1.getVelocity().y));
             }
             
-            // Notifica a inversão da direção após a colisão
-            OnDirectionInverted(objectId1, horizontalCollision ? "horizontal" : "vertical");
+            recordVelocity(obj1);
         }
+
+        // Notifica a inversão da direção após a colisão
+        OnDirectionInverted(objectId1, horizontalCollision ? "horizontal" : "vertical");
     }
     
     /*
@@ -1670,22 +2396,22 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
             Bitmap imageBitmap = ((BitmapDrawable) drawable).getBitmap();
             Bitmap resizedBitmap = Bitmap.createScaledBitmap(imageBitmap, (int)width, (int)height, true);
             
+            // Ajusta a posição da Sprite para que o ponto de origem esteja nas coordenadas (x, y)
+            float adjustedX = x - (width / 2);
+            float adjustedY = y - (height / 2);
+            
             // Cria um novo PhysicsObject para a sprite
-            PhysicsObject physicsObject = new PhysicsObject(x, y, width, height, mass, friction); // Ajuste massa e atrito conforme necessário
-            objects.put(objectId, physicsObject);
+            PhysicsObject physicsObject = world.addBody(objectId, adjustedX, adjustedY, width, height, mass, friction); // Ajuste massa e atrito conforme necessário
             
             // Cria e armazena o novo Sprite associado ao PhysicsObject
             Sprite sprite = new Sprite(resizedBitmap, physicsObject);
+            sprite.setImagePath(imagePath);
+            sprite.setLayerName(layerName);
             sprites.put(objectId, sprite);
 
             // Define o ponto de origem da Sprite no centro
             OriginPoint op = OriginPoint.fromUnderlyingValue(originPointStr);
             sprite.setOriginPoint(op, null);
-
-            // Ajusta a posição da Sprite para que o ponto de origem esteja nas coordenadas (x, y)
-            float adjustedX = x - (width / 2);
-            float adjustedY = y - (height / 2);
-            physicsObject.setPosition(new Vector2D(adjustedX, adjustedY));
             
             RedrawCanvas(-1, showCollisionBoxes);
             // Não é mais necessário chamar RedrawCanvas aqui, a atualização será gerenciada pelo sistema de física
@@ -1749,6 +2475,7 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
 
                     // Atualiza a imagem da sprite
                     sprite.setImage(newImageBitmap);
+                    sprite.setImagePath(imagePath);
                     RedrawCanvas(-1, showCollisionBoxes);
                 }
             });
@@ -1771,27 +2498,28 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
                 showTouchesAndBounds = showTouches;
 
                 boolean touchDetected = false;
-                for (Map.Entry<Integer, Sprite> entry : sprites.entrySet()) {
-                    Sprite sprite = entry.getValue();
-                    PhysicsObject physicsObject = sprite.getPhysicsObject();
-                    Vector2D position = physicsObject.getPosition();
-                    float width = physicsObject.getSize().x;
-                    float height = physicsObject.getSize().y;
-
-                    // Calcula os limites da sprite usando RectF
-                    RectF spriteBounds = sprite.getBounds();
-
-                    if (spriteBounds.contains(touchX, touchY)) {
-                        final int spriteId = entry.getKey();
-                        touchDetected = true;
-                        // Chama o evento OnSpriteTouched na thread principal
-                        uiHandler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                OnSpriteTouched(spriteId);
+                // Os limites são atualizados junto com a posição, sob o monitor dos corpos
+                synchronized (objects) {
+                    synchronized (sprites) {
+                        for (Map.Entry<Integer, Sprite> entry : sprites.entrySet()) {
+                            Sprite sprite = entry.getValue();
+
+                            // Calcula os limites da sprite usando RectF
+                            RectF spriteBounds = sprite.getBounds();
+
+                            if (spriteBounds.contains(touchX, touchY)) {
+                                final int spriteId = entry.getKey();
+                                touchDetected = true;
+                                // Chama o evento OnSpriteTouched na thread principal
+                                uiHandler.post(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        OnSpriteTouched(spriteId);
+                                    }
+                                });
+                                break; // Para a iteração após o primeiro toque detectado para evitar múltiplos toques
                             }
-                        });
-                        break; // Para a iteração após o primeiro toque detectado para evitar múltiplos toques
+                        }
                     }
                 }
 
@@ -1817,7 +2545,7 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
     public void RemoveSprite(int spriteId) {
         if (sprites.containsKey(spriteId)) {
             sprites.remove(spriteId); // Remove a sprite do mapa
-            objects.remove(spriteId); // Remove o objeto de física associado
+            world.removeBody(spriteId); // Remove o objeto de física associado
             RedrawCanvas(-1, showCollisionBoxes); // Atualiza o canvas para refletir a remoção
         } else {
             ReportError("Sprite not found with ID: " + spriteId);
@@ -1928,84 +2656,23 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
     public void TimedEvent(int id) {
         EventDispatcher.dispatchEvent(this, "TimedEvent", id);
     }
+    
+    @SimpleEvent(description = "Triggered during PlayReplay at the first step whose world checksum differs from the recording.")
+    public void ReplayDesync(long tick) {
+        EventDispatcher.dispatchEvent(this, "ReplayDesync", tick);
+    }
+    
+    @SimpleEvent(description = "Triggered when PlayReplay ends, with the number of steps replayed and how many of them diverged.")
+    public void ReplayFinished(long steps, int desyncs) {
+        EventDispatcher.dispatchEvent(this, "ReplayFinished", steps, desyncs);
+    }
 
         
     /*
      * PRIVATE METHODS
      */
-    private void checkCollisions(PhysicsObject obj1, PhysicsObject obj2) {
-    	if (obj1.collidesWith(obj2)) {
-            String collisionSide = obj1.getCollisionSide(obj2);
-            if (!obj1.isPlatform() && obj2.isPlatform()) {
-                handlePlatformCollision(obj1, obj2, collisionSide);
-            } else if (obj1.isPlatform() && !obj2.isPlatform()) {
-                handlePlatformCollision(obj2, obj1, collisionSide);
-            } else {
-                handleCollision(obj1, obj2, collisionSide);
-            }
-        }
-    }
 
 
-    private void handlePlatformCollision(PhysicsObject obj, PhysicsObject platform, final String collisionSide) {
-    	if (platform.isPlatform() && collisionSide.equals("bottom")) {
-            obj.setOnPlatform(true);
-            
-            // Parar a velocidade vertical do objeto para evitar movimento contínuo para baixo
-            obj.setVelocity(new Vector2D(obj.getVelocity().x, 0));
-            
-            // Ajustar a posição y do objeto para ficar exatamente em cima da plataforma
-            float correctedY = platform.getPosition().y - platform.getSize().y;
-            obj.setPosition(new Vector2D(obj.getPosition().x, correctedY));
-
-            final int objId1 = findObjectId(obj);
-            final int objId2 = findObjectId(platform);
-            
-            // Postar o evento de colisão para ser executado no thread da UI
-            uiHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    OnCollision(objId1, objId2, collisionSide);
-                }
-            });
-        } else {
-            obj.setOnPlatform(false);
-        }
-    	
-    	if (platform.isPlatform()) {
-            if (collisionSide.equals("bottom")) {
-        		
-            } else {
-                obj.setOnPlatform(false);
-            }
-        }
-    }
-
-    // Método para lidar com a colisão
-    private void handleCollision(PhysicsObject obj1, PhysicsObject obj2, final String collisionSide) {
-        final int objId1 = findObjectId(obj1);
-        final int objId2 = findObjectId(obj2);
-        if (objId1 != -1 && objId2 != -1) {
-            // Postar o evento de colisão para ser executado no thread da UI
-            uiHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    OnCollision(objId1, objId2, collisionSide);
-                }
-            });
-        }
-    }
-
-    // Helper method to find object ID
-    private int findObjectId(PhysicsObject obj) {
-        for (Map.Entry<Integer, PhysicsObject> entry : objects.entrySet()) {
-            if (entry.getValue().equals(obj)) {
-                return entry.getKey();
-            }
-        }
-        return -1; // Return -1 if object not found
-    }
-    
     public class Pair<F, S> {
         private F first;
         private S second;
@@ -2024,17 +2691,6 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
         }
     }
     
-    private void updateOnPlatformState(PhysicsObject obj) {
-        boolean onPlatform = false;
-        for (PhysicsObject platform : objects.values()) {
-            if (platform.isPlatform() && obj.collidesWith(platform)) {
-                onPlatform = true;
-                break;
-            }
-        }
-        obj.setOnPlatform(onPlatform);
-    }
-    
     public void SetCanvasMonitoring(final Canvas canvas) {
         final View view = canvas.getView();
 
@@ -2101,6 +2757,7 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
 		    	
 		    	android.graphics.Canvas finalCanvas = new android.graphics.Canvas(finalBitmap);
 		        paint.reset(); // Reseta o Paint para reutilização
+		        final float alpha = renderAlpha;
 		
 		        // Ordena e desenha as camadas
 		        List<Layer> sortedLayers = new ArrayList<>(layerMap.values());
@@ -2132,23 +2789,30 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
 		
 		            if (objectId != -1) {
 		                // Desenha a caixa de colisão para um objeto específico
-		                PhysicsObject specificObj = objects.get(objectId);
-		                if (specificObj != null) {
-		                    Vector2D position = specificObj.getPosition();
-		                    Vector2D size = specificObj.getSize();
-		                    finalCanvas.drawRect((float) position.x, (float) position.y, 
-		                                        (float) (position.x + size.x), (float) (position.y + size.y), paint);
+		                float x = 0, y = 0;
+		                Vector2D size = null;
+		                synchronized (objects) {
+		                    PhysicsObject specificObj = objects.get(objectId);
+		                    if (specificObj != null) {
+		                        x = specificObj.getInterpolatedX(alpha);
+		                        y = specificObj.getInterpolatedY(alpha);
+		                        size = specificObj.getSize();
+		                    }
+		                }
+		                if (size != null) {
+		                    finalCanvas.drawRect(x, y, x + size.x, y + size.y, paint);
 		                }
 		            } else {
 		                // Desenha caixas de colisão para todos os objetos
-		            	//(this.objects) {
-		                for (PhysicsObject obj : objects.values()) {
-			                    Vector2D position = obj.getPosition();
+		            	synchronized (objects) {
+		                for (int i = 0; i < objects.size(); i++) {
+			                    PhysicsObject obj = objects.getAt(i);
+			                    float x = obj.getInterpolatedX(alpha);
+			                    float y = obj.getInterpolatedY(alpha);
 			                    Vector2D size = obj.getSize();
-			                    finalCanvas.drawRect((float) position.x, (float) position.y, 
-			                                        (float) (position.x + size.x), (float) (position.y + size.y), paint);
+			                    finalCanvas.drawRect(x, y, x + size.x, y + size.y, paint);
 		                }
-		            	//}
+		            	}
 		            }
 		        }
 		        
@@ -2164,16 +2828,25 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
 		        // Aplica a posição da câmera
 		        finalCanvas.translate(-camera.getPosition().x, -camera.getPosition().y);
 		        
+		        // Copia as posições interpoladas sob o monitor dos corpos e desenha a partir da cópia
+		        List<Sprite> drawnSprites = new ArrayList<>();
+		        synchronized (objects) {
+		            synchronized (sprites) {
+		                for (Sprite sprite : sprites.values()) {
+		                    sprite.capture(alpha);
+		                    drawnSprites.add(sprite);
+		                }
+		            }
+		        }
+
 		        // Desenhar sprites
 		        // Desenhar sprites e pontos de origem
-		        //(this.sprites) {
-		        for (Sprite sprite : sprites.values()) {
-		            sprite.draw(finalCanvas); // Desenha a sprite
+		        for (Sprite sprite : drawnSprites) {
+		            sprite.draw(finalCanvas); // Desenha a sprite na posição interpolada
 		
 		            if (showCollisionBoxes) {
 		                // Calcula o ponto de origem para a sprite atual
 		                Vector2D originOffset = sprite.calculateOriginOffset();
-		                Vector2D spritePosition = sprite.getPhysicsObject().getPosition();
 		
 		                // Calcula a posição real do ponto de origem no canvas
 		                float originX = sprite.getOriginX();
@@ -2185,7 +2858,6 @@ public class PhysicsEngine extends AndroidNonvisibleComponent {
 		                finalCanvas.drawCircle(originX, originY, 5, paint); // Desenha o ponto de origem como um círculo pequeno
 		            }
 		        }
-		        //}
 		
 		        // Restaurar a cor e estilo do paint se necessário
 		        if (showCollisionBoxes) {
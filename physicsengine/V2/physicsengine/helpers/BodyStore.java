@@ -0,0 +1,417 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Armazena o estado dos corpos da simulação em vetores primitivos.
+ * Cada corpo ocupa um índice (slot) contíguo entre 0 e size() - 1, e os objetos
+ * PhysicsObject são apenas visões sobre esses índices. Ao remover um corpo, o
+ * último slot é movido para o lugar dele, mantendo os vetores densos.
+ */
+public class BodyStore {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Estado por corpo, indexado por slot
+    float[] posX, posY;
+    float[] prevX, prevY;
+    float[] velX, velY;
+    float[] width, height;
+    float[] mass, friction;
+    float[] forceX, forceY;
+    int[] ids;
+    boolean[] moved; // Posição ou tamanho mudou desde a última atualização da fase ampla
+    boolean[] sleeping;
+    float[] sleepTime; // Tempo contínuo em repouso, em segundos
+    int[] changedAt; // Geração de captura em que o corpo mudou por último (só conta para corpos adormecidos)
+    int generation = 1; // Avança a cada captura de WorldSnapshot
+
+    private PhysicsObject[] views;
+    private int count = 0;
+    private final Map<Integer, PhysicsObject> byId = new HashMap<>();
+    private WorldLogger logger = WorldLogger.NONE; // Usado pelas visões
+
+    /**
+     * Construtor da classe BodyStore.
+     *
+     * @param capacity Número inicial de slots reservados.
+     */
+    public BodyStore(int capacity) {
+        allocateArrays(Math.max(1, capacity));
+    }
+
+    public BodyStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public WorldLogger getLogger() {
+        return logger;
+    }
+
+    public void setLogger(WorldLogger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Cria um corpo com o ID informado. Se já existir um corpo com esse ID, ele é
+     * removido antes, como acontecia com o mapa de objetos.
+     *
+     * @return A visão PhysicsObject do novo corpo.
+     */
+    public synchronized PhysicsObject add(int id, float x, float y, float w, float h, float m, float f) {
+        remove(id);
+
+        int slot = allocate(id, x, y, w, h, m, f);
+        PhysicsObject view = new PhysicsObject(this, slot);
+        views[slot] = view;
+        byId.put(id, view);
+        return view;
+    }
+
+    /**
+     * Remove o corpo com o ID informado. A visão removida passa a ter um
+     * armazenamento próprio, então referências antigas continuam válidas.
+     *
+     * @return A visão removida, ou null se o ID não existir.
+     */
+    public synchronized PhysicsObject remove(int id) {
+        PhysicsObject view = byId.remove(id);
+        if (view == null) {
+            return null;
+        }
+
+        int slot = view.slot;
+        detach(view);
+
+        int last = count - 1;
+        if (slot != last) {
+            copySlot(this, last, slot);
+            views[slot] = views[last];
+            views[slot].slot = slot;
+        }
+        views[last] = null;
+        count--;
+        return view;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < count; i++) {
+            detach(views[i]);
+            views[i] = null;
+        }
+        byId.clear();
+        count = 0;
+    }
+
+    public synchronized PhysicsObject get(int id) {
+        return byId.get(id);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Visão do corpo armazenado no slot informado
+    public PhysicsObject getAt(int slot) {
+        return views[slot];
+    }
+
+    // ID do corpo armazenado no slot informado
+    public int getId(int slot) {
+        return ids[slot];
+    }
+
+    // Reserva um slot sem registrar visão nem ID no mapa (usado por objetos avulsos)
+    int allocate(int id, float x, float y, float w, float h, float m, float f) {
+        ensureCapacity(count + 1);
+        int slot = count++;
+        ids[slot] = id;
+        posX[slot] = x;
+        posY[slot] = y;
+        prevX[slot] = x;
+        prevY[slot] = y;
+        velX[slot] = 0;
+        velY[slot] = 0;
+        width[slot] = w;
+        height[slot] = h;
+        mass[slot] = m;
+        friction[slot] = f;
+        forceX[slot] = 0;
+        forceY[slot] = 0;
+        moved[slot] = true;
+        sleeping[slot] = false;
+        sleepTime[slot] = 0;
+        changedAt[slot] = generation;
+        return slot;
+    }
+
+    void setView(int slot, PhysicsObject view) {
+        views[slot] = view;
+    }
+
+    /**
+     * Reordena os slots por ID crescente, para que a simulação percorra os corpos
+     * sempre na mesma ordem, qualquer que tenha sido a sequência de inclusões e
+     * remoções. Ordenação por inserção: custa O(n) quando os slots já estão em ordem.
+     */
+    public synchronized void sortById() {
+        ensureCapacity(count + 1);
+        int scratch = count; // Slot livre usado como área temporária
+        for (int i = 1; i < count; i++) {
+            int id = ids[i];
+            if (ids[i - 1] <= id) {
+                continue;
+            }
+            PhysicsObject view = views[i];
+            copySlot(this, i, scratch);
+            int j = i - 1;
+            while (j >= 0 && ids[j] > id) {
+                copySlot(this, j, j + 1);
+                views[j + 1] = views[j];
+                views[j + 1].slot = j + 1;
+                j--;
+            }
+            copySlot(this, scratch, j + 1);
+            views[j + 1] = view;
+            view.slot = j + 1;
+        }
+    }
+
+    /**
+     * Resumo de 64 bits do estado simulado (ID, posição e velocidade de cada corpo).
+     * Cada corpo é misturado isoladamente e os resultados são somados, então o valor
+     * não depende da ordem dos slots. Usado pelo replay para detectar divergências.
+     */
+    public synchronized long stateHash() {
+        long hash = count;
+        for (int i = 0; i < count; i++) {
+            long h = 0xcbf29ce484222325L;
+            h = (h ^ ids[i]) * 0x100000001b3L;
+            h = (h ^ Float.floatToIntBits(posX[i])) * 0x100000001b3L;
+            h = (h ^ Float.floatToIntBits(posY[i])) * 0x100000001b3L;
+            h = (h ^ Float.floatToIntBits(velX[i])) * 0x100000001b3L;
+            h = (h ^ Float.floatToIntBits(velY[i])) * 0x100000001b3L;
+            hash += h ^ (h >>> 29);
+        }
+        return hash;
+    }
+
+    /**
+     * Esvazia o armazenamento e reserva espaço para n corpos, que serão escritos
+     * direto nos vetores (carregamento em lote, ver WorldFile).
+     */
+    synchronized void beginBulkLoad(int n) {
+        clear();
+        ensureCapacity(n);
+    }
+
+    /**
+     * Conclui um carregamento em lote: os slots [0, n) já têm ID, posição, velocidade,
+     * tamanho, massa e atrito; o restante do estado, as visões e o mapa de IDs são
+     * preenchidos aqui, em uma única passada.
+     */
+    synchronized void endBulkLoad(int n) {
+        for (int slot = 0; slot < n; slot++) {
+            prevX[slot] = posX[slot];
+            prevY[slot] = posY[slot];
+            forceX[slot] = 0;
+            forceY[slot] = 0;
+            moved[slot] = true;
+            sleeping[slot] = false;
+            sleepTime[slot] = 0;
+            changedAt[slot] = generation;
+
+            PhysicsObject view = new PhysicsObject(this, slot);
+            views[slot] = view;
+            if (byId.put(ids[slot], view) != null) {
+                count = slot + 1;
+                clear();
+                throw new IllegalArgumentException("Duplicate body id: " + ids[slot]);
+            }
+        }
+        count = n;
+    }
+
+    /**
+     * Copia o estado de todos os corpos para o snapshot. Corpos acordados mudam a
+     * cada passo e são sempre copiados; um corpo adormecido só é copiado se mudou
+     * depois da última captura feita neste mesmo snapshot, então reaproveitar
+     * snapshots custa proporcionalmente aos corpos ativos.
+     *
+     * @return O número de corpos copiados.
+     */
+    public synchronized int capture(WorldSnapshot snapshot) {
+        snapshot.ensureCapacity(count);
+        boolean sameSource = snapshot.source == this;
+        int previousCount = snapshot.count;
+        int copied = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (sameSource && i < previousCount && snapshot.ids[i] == ids[i] &&
+                sleeping[i] && snapshot.sleeping[i] && changedAt[i] <= snapshot.generation) {
+                continue;
+            }
+            snapshot.ids[i] = ids[i];
+            snapshot.posX[i] = posX[i];
+            snapshot.posY[i] = posY[i];
+            snapshot.prevX[i] = prevX[i];
+            snapshot.prevY[i] = prevY[i];
+            snapshot.velX[i] = velX[i];
+            snapshot.velY[i] = velY[i];
+            snapshot.width[i] = width[i];
+            snapshot.height[i] = height[i];
+            snapshot.mass[i] = mass[i];
+            snapshot.friction[i] = friction[i];
+            snapshot.forceX[i] = forceX[i];
+            snapshot.forceY[i] = forceY[i];
+            snapshot.moved[i] = moved[i];
+            snapshot.sleeping[i] = sleeping[i];
+            snapshot.sleepTime[i] = sleepTime[i];
+            views[i].saveViewState(snapshot, i);
+            copied++;
+        }
+
+        snapshot.source = this;
+        snapshot.count = count;
+        snapshot.generation = generation++;
+        return copied;
+    }
+
+    /**
+     * Restaura o estado dos corpos a partir do snapshot. O armazenamento precisa ter
+     * exatamente os mesmos IDs do snapshot; os slots são reordenados para a ordem da
+     * captura e as visões continuam as mesmas, então referências a elas seguem válidas.
+     */
+    public synchronized void restore(WorldSnapshot snapshot) {
+        if (snapshot.count != count) {
+            throw new IllegalStateException("The snapshot has " + snapshot.count + " bodies, the store has " + count);
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (ids[i] != snapshot.ids[i]) {
+                PhysicsObject view = byId.get(snapshot.ids[i]);
+                if (view == null) {
+                    throw new IllegalStateException("Body " + snapshot.ids[i] + " is not in the store");
+                }
+                swapSlots(i, view.slot);
+            }
+        }
+
+        System.arraycopy(snapshot.posX, 0, posX, 0, count);
+        System.arraycopy(snapshot.posY, 0, posY, 0, count);
+        System.arraycopy(snapshot.prevX, 0, prevX, 0, count);
+        System.arraycopy(snapshot.prevY, 0, prevY, 0, count);
+        System.arraycopy(snapshot.velX, 0, velX, 0, count);
+        System.arraycopy(snapshot.velY, 0, velY, 0, count);
+        System.arraycopy(snapshot.width, 0, width, 0, count);
+        System.arraycopy(snapshot.height, 0, height, 0, count);
+        System.arraycopy(snapshot.mass, 0, mass, 0, count);
+        System.arraycopy(snapshot.friction, 0, friction, 0, count);
+        System.arraycopy(snapshot.forceX, 0, forceX, 0, count);
+        System.arraycopy(snapshot.forceY, 0, forceY, 0, count);
+        System.arraycopy(snapshot.moved, 0, moved, 0, count);
+        System.arraycopy(snapshot.sleeping, 0, sleeping, 0, count);
+        System.arraycopy(snapshot.sleepTime, 0, sleepTime, 0, count);
+        for (int i = 0; i < count; i++) {
+            views[i].restoreViewState(snapshot, i);
+        }
+        // Os corpos agora coincidem com este snapshot e diferem de qualquer captura anterior
+        snapshot.source = this;
+        snapshot.generation = generation;
+        Arrays.fill(changedAt, 0, count, generation);
+        generation++;
+    }
+
+    // Troca o conteúdo de dois slots, usando o slot após o último como área temporária
+    private void swapSlots(int a, int b) {
+        ensureCapacity(count + 1);
+        int scratch = count;
+        copySlot(this, a, scratch);
+        copySlot(this, b, a);
+        copySlot(this, scratch, b);
+
+        PhysicsObject view = views[a];
+        views[a] = views[b];
+        views[b] = view;
+        views[a].slot = a;
+        views[b].slot = b;
+    }
+
+    // Move os dados da visão para um armazenamento próprio de um único slot
+    private void detach(PhysicsObject view) {
+        BodyStore own = new BodyStore(1);
+        own.count = 1;
+        copySlot(own, view.slot, 0);
+        own.ids[0] = -1;
+        own.views[0] = view;
+        view.store = own;
+        view.slot = 0;
+    }
+
+    private void copySlot(BodyStore dst, int from, int to) {
+        dst.ids[to] = ids[from];
+        dst.posX[to] = posX[from];
+        dst.posY[to] = posY[from];
+        dst.prevX[to] = prevX[from];
+        dst.prevY[to] = prevY[from];
+        dst.velX[to] = velX[from];
+        dst.velY[to] = velY[from];
+        dst.width[to] = width[from];
+        dst.height[to] = height[from];
+        dst.mass[to] = mass[from];
+        dst.friction[to] = friction[from];
+        dst.forceX[to] = forceX[from];
+        dst.forceY[to] = forceY[from];
+        dst.moved[to] = moved[from];
+        dst.sleeping[to] = sleeping[from];
+        dst.sleepTime[to] = sleepTime[from];
+        dst.changedAt[to] = changedAt[from];
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(required, ids.length * 2);
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        prevX = Arrays.copyOf(prevX, capacity);
+        prevY = Arrays.copyOf(prevY, capacity);
+        velX = Arrays.copyOf(velX, capacity);
+        velY = Arrays.copyOf(velY, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        mass = Arrays.copyOf(mass, capacity);
+        friction = Arrays.copyOf(friction, capacity);
+        forceX = Arrays.copyOf(forceX, capacity);
+        forceY = Arrays.copyOf(forceY, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        moved = Arrays.copyOf(moved, capacity);
+        sleeping = Arrays.copyOf(sleeping, capacity);
+        sleepTime = Arrays.copyOf(sleepTime, capacity);
+        changedAt = Arrays.copyOf(changedAt, capacity);
+        views = Arrays.copyOf(views, capacity);
+    }
+
+    private void allocateArrays(int capacity) {
+        posX = new float[capacity];
+        posY = new float[capacity];
+        prevX = new float[capacity];
+        prevY = new float[capacity];
+        velX = new float[capacity];
+        velY = new float[capacity];
+        width = new float[capacity];
+        height = new float[capacity];
+        mass = new float[capacity];
+        friction = new float[capacity];
+        forceX = new float[capacity];
+        forceY = new float[capacity];
+        ids = new int[capacity];
+        moved = new boolean[capacity];
+        sleeping = new boolean[capacity];
+        sleepTime = new float[capacity];
+        changedAt = new int[capacity];
+        views = new PhysicsObject[capacity];
+    }
+}
@@ -0,0 +1,26 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.List;
+
+/**
+ * Estrutura de fase ampla (broadphase) que encontra candidatos a colisão.
+ * O motor insere e remove os corpos e chama update() apenas para os que se moveram.
+ */
+public interface Broadphase {
+    void insert(PhysicsObject object);
+
+    boolean remove(PhysicsObject object);
+
+    // Chamado quando a posição ou o tamanho do objeto mudou
+    void update(PhysicsObject object);
+
+    void clear();
+
+    // Retorna os objetos que podem colidir com o objeto dado
+    List<PhysicsObject> retrieve(List<PhysicsObject> returnObjects, PhysicsObject object);
+
+    // Retorna os objetos cujas caixas podem tocar a região dada; quem chama confere a sobreposição exata
+    List<PhysicsObject> query(List<PhysicsObject> returnObjects, float minX, float minY, float maxX, float maxY);
+
+    int size();
+}
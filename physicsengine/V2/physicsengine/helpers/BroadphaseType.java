@@ -0,0 +1,36 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import com.google.appinventor.components.common.OptionList;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public enum BroadphaseType implements OptionList<String> {
+    QUAD_TREE("QuadTree"),
+    SWEEP_AND_PRUNE("SweepAndPrune"),
+    SPATIAL_HASH("SpatialHash"),
+    AABB_TREE("AABBTree");
+
+    private String typeCode;
+
+    BroadphaseType(String code) {
+        this.typeCode = code;
+    }
+
+    @Override
+    public String toUnderlyingValue() {
+        return typeCode;
+    }
+
+    private static final Map<String, BroadphaseType> lookup = new HashMap<>();
+
+    static {
+        for (BroadphaseType type : BroadphaseType.values()) {
+            lookup.put(type.toUnderlyingValue(), type);
+        }
+    }
+
+    public static BroadphaseType fromUnderlyingValue(String code) {
+        return lookup.get(code);
+    }
+}
@@ -0,0 +1,78 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Lista reutilizável de pares de objetos, com o lado da colisão de cada par.
+ * Serve tanto para os pares vindos da fase ampla quanto para os contatos
+ * encontrados por um bloco da fase estreita, que também guardam a normal (do
+ * primeiro objeto para o segundo) e a penetração; clear() mantém os vetores alocados.
+ */
+public class ContactBuffer {
+    private PhysicsObject[] first = new PhysicsObject[16];
+    private PhysicsObject[] second = new PhysicsObject[16];
+    private String[] sides = new String[16];
+    private float[] normalX = new float[16];
+    private float[] normalY = new float[16];
+    private float[] depth = new float[16];
+    private int count = 0;
+
+    public void add(PhysicsObject a, PhysicsObject b, String side) {
+        add(a, b, side, 0, 0, 0);
+    }
+
+    public void add(PhysicsObject a, PhysicsObject b, String side, float nx, float ny, float penetration) {
+        if (count == first.length) {
+            int capacity = count * 2;
+            first = Arrays.copyOf(first, capacity);
+            second = Arrays.copyOf(second, capacity);
+            sides = Arrays.copyOf(sides, capacity);
+            normalX = Arrays.copyOf(normalX, capacity);
+            normalY = Arrays.copyOf(normalY, capacity);
+            depth = Arrays.copyOf(depth, capacity);
+        }
+        first[count] = a;
+        second[count] = b;
+        sides[count] = side;
+        normalX[count] = nx;
+        normalY[count] = ny;
+        depth[count] = penetration;
+        count++;
+    }
+
+    public PhysicsObject getFirst(int index) {
+        return first[index];
+    }
+
+    public PhysicsObject getSecond(int index) {
+        return second[index];
+    }
+
+    public String getSide(int index) {
+        return sides[index];
+    }
+
+    public float getNormalX(int index) {
+        return normalX[index];
+    }
+
+    public float getNormalY(int index) {
+        return normalY[index];
+    }
+
+    public float getDepth(int index) {
+        return depth[index];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Esvazia a lista e solta as referências aos objetos
+    public void clear() {
+        Arrays.fill(first, 0, count, null);
+        Arrays.fill(second, 0, count, null);
+        Arrays.fill(sides, 0, count, null);
+        count = 0;
+    }
+}
@@ -0,0 +1,245 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Resolvedor de contatos por impulsos sequenciais.
+ * Cada par em contato forma um manifold com normal, penetração e impulsos
+ * acumulados (normal e de atrito). Os manifolds são identificados pela chave do
+ * par e guardados de um passo para o outro: os impulsos do passo anterior são
+ * reaplicados no início (warm starting), então pilhas assentam em poucas iterações.
+ * Plataformas e corpos sem massa são tratados como estáticos.
+ */
+public class ContactSolver {
+    private static final float POSITION_CORRECTION = 0.8f; // Fração da penetração corrigida por passo
+    private static final float PENETRATION_SLOP = 0.5f; // Penetração tolerada, evita tremulação
+    private static final float WARM_START_MIN_DOT = 0.95f; // Normais mais diferentes que isso não reaproveitam impulsos
+
+    private int iterations = 8;
+
+    // Manifolds do passo atual
+    private PhysicsObject[] bodyA = new PhysicsObject[16];
+    private PhysicsObject[] bodyB = new PhysicsObject[16];
+    private long[] keys = new long[16];
+    private float[] normalX = new float[16];
+    private float[] normalY = new float[16];
+    private float[] penetration = new float[16];
+    private float[] normalImpulse = new float[16];
+    private float[] tangentImpulse = new float[16];
+    private int count = 0;
+
+    // Manifolds do passo anterior, consultados pela chave do par
+    private long[] previousKeys = new long[16];
+    private float[] previousNormalX = new float[16];
+    private float[] previousNormalY = new float[16];
+    private float[] previousNormalImpulse = new float[16];
+    private float[] previousTangentImpulse = new float[16];
+    private final LongIntHashMap previousIndex = new LongIntHashMap(64);
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public void setIterations(int iterations) {
+        if (iterations > 0) {
+            this.iterations = iterations;
+        }
+    }
+
+    /**
+     * Registra um contato entre dois objetos que se sobrepõem. Internamente o par é
+     * guardado com o objeto de menor ID primeiro, invertendo a normal se preciso.
+     *
+     * @param nx Normal unitária do contato, do objeto a para o objeto b (X).
+     * @param ny Normal unitária do contato, do objeto a para o objeto b (Y).
+     * @param depth Penetração ao longo da normal.
+     * @return true se o par não estava em contato no passo anterior.
+     */
+    public boolean addContact(PhysicsObject a, PhysicsObject b, float nx, float ny, float depth) {
+        if (a.getId() > b.getId()) {
+            PhysicsObject swap = a;
+            a = b;
+            b = swap;
+            nx = -nx;
+            ny = -ny;
+        }
+
+        ensureCapacity(count + 1);
+        int i = count++;
+        bodyA[i] = a;
+        bodyB[i] = b;
+        keys[i] = LongHashSet.pairKey(a.getId(), b.getId());
+        normalX[i] = nx;
+        normalY[i] = ny;
+        penetration[i] = depth;
+
+        int previous = previousIndex.get(keys[i], -1);
+        if (previous >= 0 &&
+            normalX[i] * previousNormalX[previous] + normalY[i] * previousNormalY[previous] >= WARM_START_MIN_DOT) {
+            normalImpulse[i] = previousNormalImpulse[previous];
+            tangentImpulse[i] = previousTangentImpulse[previous];
+        } else {
+            normalImpulse[i] = 0;
+            tangentImpulse[i] = 0;
+        }
+        return previous < 0;
+    }
+
+    /**
+     * Resolve os contatos registrados neste passo: aplica os impulsos do passo
+     * anterior, itera sobre as velocidades e corrige as penetrações restantes.
+     * Depois os manifolds passam a ser o estado anterior do próximo passo.
+     */
+    public void solve() {
+        // Warm starting
+        for (int i = 0; i < count; i++) {
+            applyImpulse(i, normalImpulse[i], tangentImpulse[i]);
+        }
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            for (int i = 0; i < count; i++) {
+                solveContact(i);
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            correctPosition(i);
+        }
+
+        keepAsPrevious();
+    }
+
+    // Esquece os manifolds, por exemplo quando o resolvedor é desligado
+    public void clear() {
+        Arrays.fill(bodyA, 0, count, null);
+        Arrays.fill(bodyB, 0, count, null);
+        count = 0;
+        previousIndex.clear();
+    }
+
+    public int getContactCount() {
+        return count;
+    }
+
+    private void solveContact(int i) {
+        PhysicsObject a = bodyA[i];
+        PhysicsObject b = bodyB[i];
+        float invMassA = inverseMass(a);
+        float invMassB = inverseMass(b);
+        float invMassSum = invMassA + invMassB;
+        if (invMassSum == 0) {
+            return;
+        }
+
+        float nx = normalX[i];
+        float ny = normalY[i];
+        float relativeX = b.store.velX[b.slot] - a.store.velX[a.slot];
+        float relativeY = b.store.velY[b.slot] - a.store.velY[a.slot];
+
+        // Impulso normal: impede que os objetos se aproximem, acumulado e limitado a >= 0
+        float normalVelocity = relativeX * nx + relativeY * ny;
+        float lambda = -normalVelocity / invMassSum;
+        float oldNormal = normalImpulse[i];
+        normalImpulse[i] = Math.max(oldNormal + lambda, 0);
+        float normalDelta = normalImpulse[i] - oldNormal;
+
+        // Atrito na tangente, limitado pelo cone de Coulomb
+        float tx = -ny;
+        float ty = nx;
+        float tangentVelocity = relativeX * tx + relativeY * ty;
+        float friction = (float)Math.sqrt(Math.max(0, a.getFriction() * b.getFriction()));
+        float maxFriction = friction * normalImpulse[i];
+        float oldTangent = tangentImpulse[i];
+        tangentImpulse[i] = Math.max(-maxFriction, Math.min(oldTangent - tangentVelocity / invMassSum, maxFriction));
+        float tangentDelta = tangentImpulse[i] - oldTangent;
+
+        applyImpulse(i, normalDelta, tangentDelta);
+    }
+
+    private void applyImpulse(int i, float normal, float tangent) {
+        PhysicsObject a = bodyA[i];
+        PhysicsObject b = bodyB[i];
+        float invMassA = inverseMass(a);
+        float invMassB = inverseMass(b);
+        float impulseX = normalX[i] * normal - normalY[i] * tangent;
+        float impulseY = normalY[i] * normal + normalX[i] * tangent;
+        // Um dos dois pode estar adormecido; o impulso precisa aparecer nas próximas capturas
+        a.markChanged();
+        b.markChanged();
+
+        a.store.velX[a.slot] -= impulseX * invMassA;
+        a.store.velY[a.slot] -= impulseY * invMassA;
+        b.store.velX[b.slot] += impulseX * invMassB;
+        b.store.velY[b.slot] += impulseY * invMassB;
+    }
+
+    // Afasta os objetos na direção da normal, dividindo a correção pelo inverso das massas
+    private void correctPosition(int i) {
+        PhysicsObject a = bodyA[i];
+        PhysicsObject b = bodyB[i];
+        float invMassA = inverseMass(a);
+        float invMassB = inverseMass(b);
+        float invMassSum = invMassA + invMassB;
+        float depth = penetration[i] - PENETRATION_SLOP;
+        if (invMassSum == 0 || depth <= 0) {
+            return;
+        }
+
+        float correction = depth * POSITION_CORRECTION / invMassSum;
+        if (invMassA > 0) {
+            a.store.posX[a.slot] -= normalX[i] * correction * invMassA;
+            a.store.posY[a.slot] -= normalY[i] * correction * invMassA;
+            a.store.moved[a.slot] = true;
+        }
+        if (invMassB > 0) {
+            b.store.posX[b.slot] += normalX[i] * correction * invMassB;
+            b.store.posY[b.slot] += normalY[i] * correction * invMassB;
+            b.store.moved[b.slot] = true;
+        }
+    }
+
+    private static float inverseMass(PhysicsObject obj) {
+        float mass = obj.getMass();
+        return obj.isPlatform() || mass <= 0 ? 0 : 1 / mass;
+    }
+
+    private void keepAsPrevious() {
+        if (previousKeys.length < count) {
+            int capacity = keys.length;
+            previousKeys = new long[capacity];
+            previousNormalX = new float[capacity];
+            previousNormalY = new float[capacity];
+            previousNormalImpulse = new float[capacity];
+            previousTangentImpulse = new float[capacity];
+        }
+
+        previousIndex.clear();
+        for (int i = 0; i < count; i++) {
+            previousKeys[i] = keys[i];
+            previousNormalX[i] = normalX[i];
+            previousNormalY[i] = normalY[i];
+            previousNormalImpulse[i] = normalImpulse[i];
+            previousTangentImpulse[i] = tangentImpulse[i];
+            previousIndex.put(keys[i], i);
+        }
+
+        Arrays.fill(bodyA, 0, count, null);
+        Arrays.fill(bodyB, 0, count, null);
+        count = 0;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= keys.length) {
+            return;
+        }
+        int capacity = Math.max(required, keys.length * 2);
+        bodyA = Arrays.copyOf(bodyA, capacity);
+        bodyB = Arrays.copyOf(bodyB, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        normalX = Arrays.copyOf(normalX, capacity);
+        normalY = Arrays.copyOf(normalY, capacity);
+        penetration = Arrays.copyOf(penetration, capacity);
+        normalImpulse = Arrays.copyOf(normalImpulse, capacity);
+        tangentImpulse = Arrays.copyOf(tangentImpulse, capacity);
+    }
+}
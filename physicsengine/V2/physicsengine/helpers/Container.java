@@ -20,9 +20,10 @@ public class Container {
     }
 
     public void updateChildrenPositions() {
-        for (PhysicsObject child : children) {
+        for (int i = 0; i < children.size(); i++) {
+            PhysicsObject child = children.get(i);
             Vector2D offset = child.getContainerOffset();
-            child.setPosition(new Vector2D(parent.getPosition().x + offset.x, parent.getPosition().y + offset.y));
+            child.setPosition(parent.getX() + offset.x, parent.getY() + offset.y);
         }
     }
 
@@ -31,6 +32,14 @@ public class Container {
         child.setContainer(null);
     }
 
+    public int getChildCount() {
+        return children.size();
+    }
+
+    public PhysicsObject getChild(int index) {
+        return children.get(index);
+    }
+
     public PhysicsObject getParent() {
         return parent;
     }
@@ -0,0 +1,404 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fase ampla por árvore dinâmica de caixas (BVH), sem limites de mundo.
+ * Cada folha guarda uma caixa "gorda", maior que o corpo por uma margem; enquanto
+ * o corpo continuar dentro dela, update() não mexe na árvore. As inserções escolhem
+ * o irmão pelo menor aumento de perímetro e rotações mantêm a árvore balanceada,
+ * então as consultas continuam logarítmicas mesmo com corpos fora do canvas.
+ */
+public class DynamicAABBTree implements Broadphase {
+    private static final int NULL_NODE = -1;
+
+    private float margin;
+
+    // Nós da árvore em vetores paralelos; folhas têm child1 == NULL_NODE
+    private float[] minX = new float[16];
+    private float[] minY = new float[16];
+    private float[] maxX = new float[16];
+    private float[] maxY = new float[16];
+    private int[] parent = new int[16];
+    private int[] child1 = new int[16];
+    private int[] child2 = new int[16];
+    private int[] height = new int[16];
+    private PhysicsObject[] objects = new PhysicsObject[16];
+    private int nodeCount = 0; // Maior número de nó já usado
+    private int freeList = NULL_NODE; // Nós livres, encadeados por parent
+    private int root = NULL_NODE;
+
+    private final Map<PhysicsObject, Integer> leafIndex = new IdentityHashMap<>();
+    private int[] stack = new int[64];
+
+    /**
+     * Construtor da classe DynamicAABBTree.
+     *
+     * @param margin Quanto cada caixa de folha é aumentada em cada lado.
+     */
+    public DynamicAABBTree(float margin) {
+        setMargin(margin);
+    }
+
+    public float getMargin() {
+        return margin;
+    }
+
+    // A nova margem vale para as folhas inseridas ou reinseridas a partir de agora
+    public void setMargin(float margin) {
+        if (margin >= 0) {
+            this.margin = margin;
+        }
+    }
+
+    @Override
+    public void insert(PhysicsObject object) {
+        if (leafIndex.containsKey(object)) {
+            update(object);
+            return;
+        }
+        int leaf = allocateNode();
+        objects[leaf] = object;
+        setFatBounds(leaf, object);
+        leafIndex.put(object, leaf);
+        insertLeaf(leaf);
+    }
+
+    @Override
+    public boolean remove(PhysicsObject object) {
+        Integer leaf = leafIndex.remove(object);
+        if (leaf == null) {
+            return false;
+        }
+        removeLeaf(leaf);
+        freeNode(leaf);
+        return true;
+    }
+
+    /**
+     * Reinsere o objeto apenas se a caixa real saiu da caixa gorda da folha.
+     */
+    @Override
+    public void update(PhysicsObject object) {
+        Integer index = leafIndex.get(object);
+        if (index == null) {
+            insert(object);
+            return;
+        }
+        int leaf = index;
+        float x = object.getX();
+        float y = object.getY();
+        if (minX[leaf] <= x && minY[leaf] <= y &&
+            maxX[leaf] >= x + object.getWidth() && maxY[leaf] >= y + object.getHeight()) {
+            return;
+        }
+
+        removeLeaf(leaf);
+        setFatBounds(leaf, object);
+        insertLeaf(leaf);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(objects, 0, nodeCount, null);
+        leafIndex.clear();
+        nodeCount = 0;
+        freeList = NULL_NODE;
+        root = NULL_NODE;
+    }
+
+    // Retorna os objetos cujas caixas gordas cruzam a caixa real do objeto dado
+    @Override
+    public List<PhysicsObject> retrieve(List<PhysicsObject> returnObjects, PhysicsObject object) {
+        return query(returnObjects, object.getX(), object.getY(),
+                object.getX() + object.getWidth(), object.getY() + object.getHeight());
+    }
+
+    @Override
+    public List<PhysicsObject> query(List<PhysicsObject> returnObjects, float qMinX, float qMinY, float qMaxX, float qMaxY) {
+        if (root == NULL_NODE) {
+            return returnObjects;
+        }
+
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if (minX[node] > qMaxX || maxX[node] < qMinX || minY[node] > qMaxY || maxY[node] < qMinY) {
+                continue;
+            }
+            if (child1[node] == NULL_NODE) {
+                returnObjects.add(objects[node]);
+            } else {
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = child1[node];
+                stack[top++] = child2[node];
+            }
+        }
+        return returnObjects;
+    }
+
+    @Override
+    public int size() {
+        return leafIndex.size();
+    }
+
+    // Altura da árvore (0 para uma única folha, -1 se vazia)
+    public int getHeight() {
+        return root == NULL_NODE ? -1 : height[root];
+    }
+
+    private void setFatBounds(int leaf, PhysicsObject object) {
+        minX[leaf] = object.getX() - margin;
+        minY[leaf] = object.getY() - margin;
+        maxX[leaf] = object.getX() + object.getWidth() + margin;
+        maxY[leaf] = object.getY() + object.getHeight() + margin;
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL_NODE) {
+            root = leaf;
+            parent[leaf] = NULL_NODE;
+            return;
+        }
+
+        // Desce escolhendo o filho que menos aumenta o perímetro total
+        int index = root;
+        while (child1[index] != NULL_NODE) {
+            int c1 = child1[index];
+            int c2 = child2[index];
+
+            float area = perimeter(minX[index], minY[index], maxX[index], maxY[index]);
+            float combinedArea = unionPerimeter(index, leaf);
+
+            // Custo de criar um novo pai para este nó e a folha
+            float cost = 2 * combinedArea;
+            // Custo mínimo de empurrar a folha mais para baixo
+            float inheritanceCost = 2 * (combinedArea - area);
+
+            float cost1 = descendCost(c1, leaf) + inheritanceCost;
+            float cost2 = descendCost(c2, leaf) + inheritanceCost;
+
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? c1 : c2;
+        }
+        int sibling = index;
+
+        // Cria um novo pai para o irmão escolhido e a folha
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        objects[newParent] = null;
+        setUnion(newParent, leaf, sibling);
+        height[newParent] = height[sibling] + 1;
+
+        if (oldParent != NULL_NODE) {
+            if (child1[oldParent] == sibling) {
+                child1[oldParent] = newParent;
+            } else {
+                child2[oldParent] = newParent;
+            }
+        } else {
+            root = newParent;
+        }
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refit(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL_NODE;
+            return;
+        }
+
+        int p = parent[leaf];
+        int grandParent = parent[p];
+        int sibling = child1[p] == leaf ? child2[p] : child1[p];
+
+        if (grandParent != NULL_NODE) {
+            // O irmão ocupa o lugar do pai, que é liberado
+            if (child1[grandParent] == p) {
+                child1[grandParent] = sibling;
+            } else {
+                child2[grandParent] = sibling;
+            }
+            parent[sibling] = grandParent;
+            freeNode(p);
+            refit(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL_NODE;
+            freeNode(p);
+        }
+    }
+
+    // Sobe a partir do nó, balanceando e recalculando caixas e alturas
+    private void refit(int index) {
+        while (index != NULL_NODE) {
+            index = balance(index);
+
+            int c1 = child1[index];
+            int c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            setUnion(index, c1, c2);
+
+            index = parent[index];
+        }
+    }
+
+    /**
+     * Faz uma rotação se um dos filhos de A estiver mais de um nível mais alto que o outro.
+     *
+     * @return O nó que passou a ocupar a posição de A.
+     */
+    private int balance(int a) {
+        if (child1[a] == NULL_NODE || height[a] < 2) {
+            return a;
+        }
+
+        int b = child1[a];
+        int c = child2[a];
+        int difference = height[c] - height[b];
+
+        if (difference > 1) {
+            // Sobe C
+            int f = child1[c];
+            int g = child2[c];
+
+            child1[c] = a;
+            parent[c] = parent[a];
+            parent[a] = c;
+            replaceChild(parent[c], a, c);
+
+            if (height[f] > height[g]) {
+                child2[c] = f;
+                child2[a] = g;
+                parent[g] = a;
+                setUnion(a, b, g);
+                setUnion(c, a, f);
+                height[a] = 1 + Math.max(height[b], height[g]);
+                height[c] = 1 + Math.max(height[a], height[f]);
+            } else {
+                child2[c] = g;
+                child2[a] = f;
+                parent[f] = a;
+                setUnion(a, b, f);
+                setUnion(c, a, g);
+                height[a] = 1 + Math.max(height[b], height[f]);
+                height[c] = 1 + Math.max(height[a], height[g]);
+            }
+            return c;
+        }
+
+        if (difference < -1) {
+            // Sobe B
+            int d = child1[b];
+            int e = child2[b];
+
+            child1[b] = a;
+            parent[b] = parent[a];
+            parent[a] = b;
+            replaceChild(parent[b], a, b);
+
+            if (height[d] > height[e]) {
+                child2[b] = d;
+                child1[a] = e;
+                parent[e] = a;
+                setUnion(a, c, e);
+                setUnion(b, a, d);
+                height[a] = 1 + Math.max(height[c], height[e]);
+                height[b] = 1 + Math.max(height[a], height[d]);
+            } else {
+                child2[b] = e;
+                child1[a] = d;
+                parent[d] = a;
+                setUnion(a, c, d);
+                setUnion(b, a, e);
+                height[a] = 1 + Math.max(height[c], height[d]);
+                height[b] = 1 + Math.max(height[a], height[e]);
+            }
+            return b;
+        }
+
+        return a;
+    }
+
+    private void replaceChild(int node, int oldChild, int newChild) {
+        if (node == NULL_NODE) {
+            root = newChild;
+        } else if (child1[node] == oldChild) {
+            child1[node] = newChild;
+        } else {
+            child2[node] = newChild;
+        }
+    }
+
+    // Aumento de perímetro ao descer a folha pelo nó dado
+    private float descendCost(int node, int leaf) {
+        float combined = unionPerimeter(node, leaf);
+        if (child1[node] == NULL_NODE) {
+            return combined;
+        }
+        return combined - perimeter(minX[node], minY[node], maxX[node], maxY[node]);
+    }
+
+    private float unionPerimeter(int a, int b) {
+        return perimeter(Math.min(minX[a], minX[b]), Math.min(minY[a], minY[b]),
+                         Math.max(maxX[a], maxX[b]), Math.max(maxY[a], maxY[b]));
+    }
+
+    private static float perimeter(float x0, float y0, float x1, float y1) {
+        return 2 * ((x1 - x0) + (y1 - y0));
+    }
+
+    private void setUnion(int target, int a, int b) {
+        minX[target] = Math.min(minX[a], minX[b]);
+        minY[target] = Math.min(minY[a], minY[b]);
+        maxX[target] = Math.max(maxX[a], maxX[b]);
+        maxY[target] = Math.max(maxY[a], maxY[b]);
+    }
+
+    private int allocateNode() {
+        int node;
+        if (freeList != NULL_NODE) {
+            node = freeList;
+            freeList = parent[node];
+        } else {
+            if (nodeCount == parent.length) {
+                int capacity = parent.length * 2;
+                minX = Arrays.copyOf(minX, capacity);
+                minY = Arrays.copyOf(minY, capacity);
+                maxX = Arrays.copyOf(maxX, capacity);
+                maxY = Arrays.copyOf(maxY, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                child1 = Arrays.copyOf(child1, capacity);
+                child2 = Arrays.copyOf(child2, capacity);
+                height = Arrays.copyOf(height, capacity);
+                objects = Arrays.copyOf(objects, capacity);
+            }
+            node = nodeCount++;
+        }
+        parent[node] = NULL_NODE;
+        child1[node] = NULL_NODE;
+        child2[node] = NULL_NODE;
+        height[node] = 0;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        objects[node] = null;
+        parent[node] = freeList;
+        freeList = node;
+    }
+}
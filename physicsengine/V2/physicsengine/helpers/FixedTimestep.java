@@ -0,0 +1,90 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+/**
+ * Acumulador de tempo para o ciclo de física com passo fixo.
+ * O tempo real decorrido entre chamadas é acumulado e consumido em passos
+ * de tamanho constante, limitados por um número máximo de passos por quadro.
+ */
+public class FixedTimestep {
+    private float stepSeconds;
+    private int maxStepsPerFrame;
+    private float accumulator = 0;
+    private long lastTimeNanos;
+    private boolean started = false; // System.nanoTime() pode ser negativo, então não serve como marcador
+
+    /**
+     * Construtor da classe FixedTimestep.
+     *
+     * @param stepSeconds Duração de cada passo da simulação, em segundos.
+     * @param maxStepsPerFrame Número máximo de passos executados por chamada a advance.
+     */
+    public FixedTimestep(float stepSeconds, int maxStepsPerFrame) {
+        setStepSeconds(stepSeconds);
+        setMaxStepsPerFrame(maxStepsPerFrame);
+    }
+
+    /**
+     * Acumula o tempo real decorrido desde a última chamada e retorna quantos
+     * passos fixos devem ser executados agora. Se o atraso exceder o limite de
+     * passos por quadro, o tempo restante é descartado para evitar que a
+     * simulação nunca alcance o relógio real.
+     *
+     * @param nowNanos O instante atual, em nanossegundos (System.nanoTime()).
+     * @return O número de passos fixos a executar.
+     */
+    public int advance(long nowNanos) {
+        if (!started) {
+            started = true;
+            lastTimeNanos = nowNanos;
+            return 0;
+        }
+
+        accumulator += (nowNanos - lastTimeNanos) / 1000000000.0f;
+        lastTimeNanos = nowNanos;
+
+        int steps = (int)(accumulator / stepSeconds);
+        if (steps > maxStepsPerFrame) {
+            steps = maxStepsPerFrame;
+            accumulator = accumulator % stepSeconds; // Descarta o atraso excedente
+        } else {
+            accumulator -= steps * stepSeconds;
+        }
+        return steps;
+    }
+
+    // Reinicia a medição de tempo, por exemplo ao retomar as atualizações
+    public void reset() {
+        accumulator = 0;
+        started = false;
+    }
+
+    /**
+     * Fração de passo que sobrou no acumulador, entre 0 e 1. Usada para
+     * interpolar o desenho entre o estado anterior e o atual.
+     *
+     * @return O fator de interpolação.
+     */
+    public float getAlpha() {
+        return accumulator / stepSeconds;
+    }
+
+    public float getStepSeconds() {
+        return stepSeconds;
+    }
+
+    public void setStepSeconds(float stepSeconds) {
+        if (stepSeconds > 0) {
+            this.stepSeconds = stepSeconds;
+        }
+    }
+
+    public int getMaxStepsPerFrame() {
+        return maxStepsPerFrame;
+    }
+
+    public void setMaxStepsPerFrame(int maxStepsPerFrame) {
+        if (maxStepsPerFrame > 0) {
+            this.maxStepsPerFrame = maxStepsPerFrame;
+        }
+    }
+}
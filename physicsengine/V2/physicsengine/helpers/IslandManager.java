@@ -0,0 +1,105 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Agrupa os corpos em ilhas de contato (union-find sobre os slots do BodyStore) e
+ * decide quais ilhas dormem. Uma ilha só adormece quando todos os seus corpos estão
+ * em repouso há mais que o tempo limite, e acorda inteira quando um deles se mexe.
+ * Plataformas não ligam ilhas entre si, como a geometria estática de um nível.
+ */
+public class IslandManager {
+    private int[] parent = new int[16];
+    private float[] minSleepTime = new float[16];
+    private int count = 0;
+
+    // Começa um passo com cada corpo em sua própria ilha
+    public void reset(int bodyCount) {
+        if (bodyCount > parent.length) {
+            int capacity = Math.max(bodyCount, parent.length * 2);
+            parent = new int[capacity];
+            minSleepTime = new float[capacity];
+        }
+        count = bodyCount;
+        for (int i = 0; i < count; i++) {
+            parent[i] = i;
+        }
+    }
+
+    /**
+     * Junta as ilhas de dois corpos em contato. Os dois devem pertencer ao BodyStore
+     * passado para updateSleep().
+     */
+    public void connect(PhysicsObject a, PhysicsObject b) {
+        if (a.isPlatform() || b.isPlatform()) {
+            return;
+        }
+        int rootA = find(a.slot);
+        int rootB = find(b.slot);
+        if (rootA != rootB) {
+            parent[rootA] = rootB;
+        }
+    }
+
+    /**
+     * Adormece as ilhas cujo menor tempo em repouso alcançou o limite e acorda
+     * os corpos adormecidos das demais.
+     *
+     * @param store O armazenamento dos corpos, com os mesmos slots usados em connect().
+     * @param timeToSleep Tempo em repouso necessário para adormecer, em segundos.
+     */
+    public void updateSleep(BodyStore store, float timeToSleep) {
+        Arrays.fill(minSleepTime, 0, count, Float.MAX_VALUE);
+        for (int i = 0; i < count; i++) {
+            int root = find(i);
+            minSleepTime[root] = Math.min(minSleepTime[root], store.sleepTime[i]);
+        }
+
+        for (int i = 0; i < count; i++) {
+            boolean asleep = minSleepTime[find(i)] >= timeToSleep;
+            if (asleep && !store.sleeping[i]) {
+                store.getAt(i).sleep();
+            } else if (!asleep && store.sleeping[i]) {
+                store.getAt(i).wake();
+            }
+        }
+    }
+
+    /**
+     * Acorda os corpos adormecidos que tocam a caixa do objeto, considerando a posição
+     * anterior e a atual dele. Usado quando uma plataforma se move ou é removida.
+     * Os vizinhos vêm de uma consulta à fase ampla, então o custo não cresce com o
+     * total de corpos.
+     *
+     * @param scratch Lista de trabalho reutilizada entre as chamadas.
+     * @param margin Folga adicionada à caixa em cada lado.
+     */
+    public static void wakeTouching(Broadphase broadphase, List<PhysicsObject> scratch, PhysicsObject obj, float margin) {
+        float minX = Math.min(obj.getX(), obj.getInterpolatedX(0)) - margin;
+        float minY = Math.min(obj.getY(), obj.getInterpolatedY(0)) - margin;
+        float maxX = Math.max(obj.getX(), obj.getInterpolatedX(0)) + obj.getWidth() + margin;
+        float maxY = Math.max(obj.getY(), obj.getInterpolatedY(0)) + obj.getHeight() + margin;
+
+        scratch.clear();
+        broadphase.query(scratch, minX, minY, maxX, maxY);
+        for (int i = 0; i < scratch.size(); i++) {
+            PhysicsObject other = scratch.get(i);
+            if (other.isSleeping() &&
+                other.getX() < maxX && other.getX() + other.getWidth() > minX &&
+                other.getY() < maxY && other.getY() + other.getHeight() > minY) {
+                other.wake();
+            }
+        }
+        scratch.clear();
+    }
+
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]]; // Compressão de caminho pela metade
+            i = parent[i];
+        }
+        return i;
+    }
+}
@@ -0,0 +1,165 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Conjunto de valores long com endereçamento aberto e sondagem linear.
+ * Não cria objetos ao inserir nem ao consultar, e clear() mantém a tabela
+ * alocada, então a mesma instância pode ser reutilizada a cada passo.
+ */
+public class LongHashSet {
+    private static final long EMPTY = 0L; // O próprio 0 é guardado à parte em hasZero
+
+    private long[] keys;
+    private int mask;
+    private int size = 0;
+    private boolean hasZero = false;
+
+    /**
+     * Construtor da classe LongHashSet.
+     *
+     * @param expectedSize Número de elementos esperado antes de a tabela crescer.
+     */
+    public LongHashSet(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    // Empacota dois IDs em uma chave de par que não depende da ordem
+    public static long pairKey(int a, int b) {
+        int min = Math.min(a, b);
+        int max = Math.max(a, b);
+        return ((long)min << 32) | (max & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Adiciona o valor ao conjunto.
+     *
+     * @return true se o valor ainda não estava no conjunto.
+     */
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+
+        int index = indexFor(key);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        size++;
+        if (size * 2 > keys.length) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY) {
+            return hasZero;
+        }
+        int index = indexFor(key);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Remove o valor, deslocando para trás as chaves seguintes da mesma sequência
+     * de sondagem para que as buscas continuem encontrando-as.
+     *
+     * @return true se o valor estava no conjunto.
+     */
+    public boolean remove(long key) {
+        if (key == EMPTY) {
+            if (!hasZero) {
+                return false;
+            }
+            hasZero = false;
+            size--;
+            return true;
+        }
+
+        int index = indexFor(key);
+        while (keys[index] != key) {
+            if (keys[index] == EMPTY) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = indexFor(keys[next]);
+            // Só move a chave se o buraco estiver entre a posição ideal dela e a atual
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        size--;
+        return true;
+    }
+
+    // Esvazia o conjunto mantendo a tabela para a próxima utilização
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+            hasZero = false;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int indexFor(long key) {
+        // Mistura os bits altos e baixos (constante de Fibonacci) antes de aplicar a máscara
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        keys = new long[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY) {
+                int index = indexFor(key);
+                while (keys[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+            }
+        }
+    }
+}
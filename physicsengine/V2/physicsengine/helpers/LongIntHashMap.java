@@ -0,0 +1,158 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Mapa de long para int com endereçamento aberto e sondagem linear, no mesmo
+ * formato de LongHashSet. Não cria objetos ao inserir nem ao consultar, e
+ * clear() mantém a tabela para o próximo passo.
+ */
+public class LongIntHashMap {
+    private static final long EMPTY = 0L; // O próprio 0 é guardado à parte em hasZero
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size = 0;
+    private boolean hasZero = false;
+    private int zeroValue;
+
+    /**
+     * Construtor da classe LongIntHashMap.
+     *
+     * @param expectedSize Número de elementos esperado antes de a tabela crescer.
+     */
+    public LongIntHashMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public void put(long key, int value) {
+        if (key == EMPTY) {
+            if (!hasZero) {
+                hasZero = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+
+        int index = indexFor(key);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Retorna o valor associado à chave, ou o valor padrão se ela não existir.
+     */
+    public int get(long key, int defaultValue) {
+        if (key == EMPTY) {
+            return hasZero ? zeroValue : defaultValue;
+        }
+        int index = indexFor(key);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Remove a chave, deslocando para trás as chaves seguintes da mesma sequência
+     * de sondagem, como em LongHashSet.remove().
+     *
+     * @return O valor que estava associado à chave, ou o valor padrão se ela não existia.
+     */
+    public int remove(long key, int defaultValue) {
+        if (key == EMPTY) {
+            if (!hasZero) {
+                return defaultValue;
+            }
+            hasZero = false;
+            size--;
+            return zeroValue;
+        }
+
+        int index = indexFor(key);
+        while (keys[index] != key) {
+            if (keys[index] == EMPTY) {
+                return defaultValue;
+            }
+            index = (index + 1) & mask;
+        }
+        int removed = values[index];
+
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = indexFor(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        size--;
+        return removed;
+    }
+
+    // Esvazia o mapa mantendo a tabela para a próxima utilização
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+            hasZero = false;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int indexFor(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = indexFor(oldKeys[i]);
+                while (keys[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+}
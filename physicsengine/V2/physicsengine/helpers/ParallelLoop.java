@@ -0,0 +1,100 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Executa um laço sobre índices em blocos de tamanho fixo em um ForkJoinPool.
+ * Os limites dos blocos dependem só do tamanho do bloco, nunca do número de
+ * threads, então cada índice é sempre processado pelo mesmo bloco e o resultado
+ * não muda com a quantidade de núcleos. Abaixo do limite mínimo, ou com uma
+ * única thread, o laço roda direto na thread que chamou.
+ */
+public class ParallelLoop {
+
+    /**
+     * Trabalho executado para um bloco de índices [from, to).
+     */
+    public interface Body {
+        void run(int from, int to);
+    }
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final int chunkSize;
+    private int threshold;
+
+    /**
+     * Construtor da classe ParallelLoop.
+     *
+     * @param parallelism Número de threads; 1 ou menos desativa o paralelismo.
+     * @param chunkSize Quantidade de índices por bloco.
+     * @param threshold Quantidade mínima de índices para usar o pool.
+     */
+    public ParallelLoop(int parallelism, int chunkSize, int threshold) {
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.threshold = threshold;
+        this.pool = this.parallelism > 1 ? new ForkJoinPool(this.parallelism) : null;
+    }
+
+    public void run(int count, Body body) {
+        if (count <= 0) {
+            return;
+        }
+        if (pool == null || count < threshold || count <= chunkSize) {
+            body.run(0, count);
+            return;
+        }
+        pool.invoke(new RangeTask(body, 0, count));
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    // Encerra as threads do pool; a instância não deve ser usada depois
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Body body;
+        private final int from;
+        private final int to;
+
+        RangeTask(Body body, int from, int to) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                body.run(from, to);
+                return;
+            }
+            // Divide em uma fronteira de bloco, para que os blocos finais sejam sempre os mesmos
+            int chunks = (to - from + chunkSize - 1) / chunkSize;
+            int middle = from + (chunks / 2) * chunkSize;
+            invokeAll(new RangeTask(body, from, middle), new RangeTask(body, middle, to));
+        }
+    }
+}
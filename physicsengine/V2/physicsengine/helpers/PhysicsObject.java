@@ -1,30 +1,31 @@
 package com.bosonshiggs.physicsengine.helpers;
 
 import com.bosonshiggs.physicsengine.helpers.Vector2D;
-import android.util.Log;
 /**
 	 * Class for physical objects in the simulation.
+	 * Position, velocity, size, mass, friction and force live in a BodyStore;
+	 * this object is a view over one of its slots.
+	 * The slot changes when the store removes, sorts or restores bodies, so any
+	 * access from outside the step must hold the BodyStore monitor. The accessors
+	 * do not lock by themselves: the integration workers run them while the step
+	 * thread already holds it.
 	 */
 public class PhysicsObject {
-    private Vector2D position;
-    private Vector2D velocity;
-    private Vector2D size;
-    private float mass;
-    private float friction;
-    
+    BodyStore store;
+    int slot;
+
     private float angularVelocity;
     private float angularAcceleration;
-    
+
     private boolean isPlatform;
     private boolean onPlatform;
-    
-    private Vector2D appliedForce = new Vector2D(0, 0);
-    
+    private boolean isBullet; // Movimento varrido contra as plataformas, sem atravessá-las
+    private Shape shape; // null para a caixa comum
+
     private static final float EPSILON = 0.5f;
-    
-    private String LOG_NAME = "PhysicsEngine";
-    private boolean flagLog = true;
-    
+
+    private static final String LOG_NAME = "PhysicsEngine";
+
     private boolean isOscillatingHorizontally = false;
     private boolean isOscillatingVertically = false;
     private float oscillationAmplitudeX;
@@ -33,93 +34,115 @@ public class PhysicsObject {
     private float oscillationFrequencyY;
     private float initialPosX;
     private float initialPosY;
-    private long startTime;
-    
+    private double oscillationElapsedMs; // Tempo de simulação desde o início da oscilação
+
     //Conteiner
     private Container container;
     private Vector2D containerOffset; // Offset relativo à posição do pai
-    
+
     private int spriteId; // Identificador único para a sprite
 
+    // Cria um objeto avulso, com armazenamento próprio fora de qualquer BodyStore da engine
     public PhysicsObject(float x, float y, float width, float height, float mass, float friction) {
-        this.position = new Vector2D(x, y);
-        this.velocity = new Vector2D(0, 0);
-        this.size = new Vector2D(width, height);
-        this.mass = mass;
-        this.friction = friction;
+        this.store = new BodyStore(1);
+        this.slot = store.allocate(-1, x, y, width, height, mass, friction);
+        store.setView(slot, this);
+    }
+
+    // Visão sobre um slot já reservado em um BodyStore
+    PhysicsObject(BodyStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
     }
 
     public void applyForce(Vector2D force) {
-        this.appliedForce = force;
-        Vector2D scaledForce = new Vector2D(force.x / mass, force.y / mass);
-        velocity.add(scaledForce);
+        applyForce(force.x, force.y);
+    }
+
+    public void applyForce(float forceX, float forceY) {
+        if (store.sleeping[slot] && (forceX != 0 || forceY != 0)) {
+            wake();
+        }
+        store.forceX[slot] = forceX;
+        store.forceY[slot] = forceY;
+        store.velX[slot] += forceX / store.mass[slot];
+        store.velY[slot] += forceY / store.mass[slot];
     }
-    
+
     public Vector2D getAppliedForce() {
-        return this.appliedForce;
+        return new Vector2D(store.forceX[slot], store.forceY[slot]);
     }
 
     public void applyFriction() {
-    	velocity.multiply(1 - friction);
+        float factor = 1 - store.friction[slot];
+        store.velX[slot] *= factor;
+        store.velY[slot] *= factor;
     }
-    
+
     public void applyTorque(float torque) {
-        angularAcceleration += torque / mass; // Assuming moment of inertia proportional to mass
+        wake();
+        angularAcceleration += torque / getMass(); // Assuming moment of inertia proportional to mass
     }
 
+    // Passo de integração; não aloca objetos
     public void update(float deltaTime) {
-        applyFriction();
-        
-        long elapsedTime = System.currentTimeMillis() - startTime;
+        // A oscilação segue o tempo da simulação, não o relógio real, então é reproduzível passo a passo
+        if (isOscillatingHorizontally || isOscillatingVertically) {
+            oscillationElapsedMs += deltaTime * 1000.0;
+        }
+        double elapsedTime = oscillationElapsedMs;
         if (isOscillatingHorizontally ) {
-            float newX = initialPosX + oscillationAmplitudeX * (float)Math.sin(oscillationFrequencyX * elapsedTime);
-            if (flagLog) Log.d(LOG_NAME, "xPosOscillatingH: " + newX);
-            setPosition(new Vector2D(newX, position.y));
+            float newX = initialPosX + oscillationAmplitudeX * (float)StrictMath.sin(oscillationFrequencyX * elapsedTime);
+            if (store.getLogger().isDebugEnabled()) store.getLogger().debug(LOG_NAME, "xPosOscillatingH: " + newX);
+            setPosition(newX, store.posY[slot]);
         }
 
         if (isOscillatingVertically) {
-            float newY = initialPosY + oscillationAmplitudeY * (float)Math.sin(oscillationFrequencyY * elapsedTime);
-            if (flagLog) Log.d(LOG_NAME, "yPosOscillatingV: " + newY);
-            setPosition(new Vector2D(position.x, newY));
+            float newY = initialPosY + oscillationAmplitudeY * (float)StrictMath.sin(oscillationFrequencyY * elapsedTime);
+            if (store.getLogger().isDebugEnabled()) store.getLogger().debug(LOG_NAME, "yPosOscillatingV: " + newY);
+            setPosition(store.posX[slot], newY);
         }
-        
+
         // Verifique se a força aplicada e a velocidade são ambas efetivamente zero
-        if (Math.abs(this.appliedForce.x) < EPSILON && Math.abs(this.appliedForce.y) < EPSILON &&
-            Math.abs(this.velocity.x) < EPSILON && Math.abs(this.velocity.y) < EPSILON) {
+        if (Math.abs(store.forceX[slot]) < EPSILON && Math.abs(store.forceY[slot]) < EPSILON &&
+            Math.abs(store.velX[slot]) < EPSILON && Math.abs(store.velY[slot]) < EPSILON) {
             return;
         }
 
-        Vector2D deltaVelocity = new Vector2D(velocity.x * deltaTime, velocity.y * deltaTime);
-        position.add(deltaVelocity);
+        store.posX[slot] += store.velX[slot] * deltaTime;
+        store.posY[slot] += store.velY[slot] * deltaTime;
+        store.moved[slot] = true;
         angularVelocity += angularAcceleration * deltaTime;
         angularAcceleration = 0; // Resetar após a atualização
-        
+
     }
 
 
     public boolean collidesWith(PhysicsObject other) {
-        boolean collision = position.x < other.position.x + other.size.x &&
-                            position.x + size.x > other.position.x &&
-                            position.y < other.position.y + other.size.y &&
-                            position.y + size.y > other.position.y;
-        /*
-        if (collision) {
-            if (flagLog) Log.d(LOG_NAME, "collidesWith - Colisão detectada: Obj1 Pos=" + this.position + " Size=" + this.size +
-                  " Obj2 Pos=" + other.position + " Size=" + other.size);
-        }
-        */
+        BodyStore a = this.store;
+        BodyStore b = other.store;
+        int i = this.slot;
+        int j = other.slot;
+        boolean collision = a.posX[i] < b.posX[j] + b.width[j] &&
+                            a.posX[i] + a.width[i] > b.posX[j] &&
+                            a.posY[i] < b.posY[j] + b.height[j] &&
+                            a.posY[i] + a.height[i] > b.posY[j];
 
         return collision;
     }
 
-    
+
  // Método para determinar o lado da colisão
     public String getCollisionSide(PhysicsObject other) {
-        float dxCenter = (other.position.x + other.size.x / 2) - (this.position.x + this.size.x / 2);
-        float dyCenter = (other.position.y + other.size.y / 2) - (this.position.y + this.size.y / 2);
+        BodyStore a = this.store;
+        BodyStore b = other.store;
+        int i = this.slot;
+        int j = other.slot;
+        float dxCenter = (b.posX[j] + b.width[j] / 2) - (a.posX[i] + a.width[i] / 2);
+        float dyCenter = (b.posY[j] + b.height[j] / 2) - (a.posY[i] + a.height[i] / 2);
 
-        float width = (this.size.x + other.size.x) / 2;
-        float height = (this.size.y + other.size.y) / 2;
+        float width = (a.width[i] + b.width[j]) / 2;
+        float height = (a.height[i] + b.height[j]) / 2;
 
         float crossWidth = width * dyCenter;
         float crossHeight = height * dxCenter;
@@ -135,111 +158,302 @@ public class PhysicsObject {
     }
 
  // New methods for getting and setting properties
+    // Os getters de Vector2D retornam cópias; use getX()/getY() etc. nos laços da simulação
     public Vector2D getPosition() {
-        return position;
+        return new Vector2D(store.posX[slot], store.posY[slot]);
+    }
+
+    public float getX() {
+        return store.posX[slot];
+    }
+
+    public float getY() {
+        return store.posY[slot];
+    }
+
+    // ID do corpo na engine, ou -1 se o objeto não pertence a nenhuma engine
+    public int getId() {
+        return store.ids[slot];
+    }
+
+    // Guarda a posição atual como estado anterior (início de passo ou teletransporte)
+    public void savePreviousState() {
+        store.prevX[slot] = store.posX[slot];
+        store.prevY[slot] = store.posY[slot];
+    }
+
+    // Posição interpolada entre o passo anterior e o atual (alpha entre 0 e 1)
+    public float getInterpolatedX(float alpha) {
+        float previous = store.prevX[slot];
+        return previous + (store.posX[slot] - previous) * alpha;
+    }
+
+    public float getInterpolatedY(float alpha) {
+        float previous = store.prevY[slot];
+        return previous + (store.posY[slot] - previous) * alpha;
     }
 
     public void setPosition(Vector2D position) {
-        this.position = position;
-        
-        if (container != null) {
-            container.onParentUpdated(); // Atualizar a posição dos objetos filhos
+        setPosition(position.x, position.y);
+    }
+
+    public void setPosition(float x, float y) {
+        if (x != store.posX[slot] || y != store.posY[slot]) {
+            store.posX[slot] = x;
+            store.posY[slot] = y;
+            store.moved[slot] = true;
+            wake();
         }
     }
 
     public Vector2D getSize() {
-        return size;
+        return new Vector2D(store.width[slot], store.height[slot]);
+    }
+
+    public float getWidth() {
+        return store.width[slot];
+    }
+
+    public float getHeight() {
+        return store.height[slot];
     }
 
     public void setSize(Vector2D size) {
-        this.size = size;
+        store.width[slot] = size.x;
+        store.height[slot] = size.y;
+        store.moved[slot] = true;
+        wake();
+    }
+
+    // Indica se o corpo está adormecido e é ignorado pela simulação
+    public boolean isSleeping() {
+        return store.sleeping[slot];
+    }
+
+    // Acorda o corpo e zera o tempo em repouso; chamado por toda alteração de estado
+    public void wake() {
+        store.sleeping[slot] = false;
+        store.sleepTime[slot] = 0;
+    }
+
+    // Adormece o corpo, zerando velocidade e força
+    public void sleep() {
+        markChanged();
+        store.sleeping[slot] = true;
+        store.velX[slot] = 0;
+        store.velY[slot] = 0;
+        store.forceX[slot] = 0;
+        store.forceY[slot] = 0;
+    }
+
+    public float getSleepTime() {
+        return store.sleepTime[slot];
+    }
+
+    /**
+     * Acumula o tempo em repouso depois de um passo. Corpos oscilando nunca
+     * ficam em repouso, pois a oscilação só avança enquanto estão acordados.
+     *
+     * @param deltaTime A duração do passo, em segundos.
+     */
+    public void updateSleepTime(float deltaTime) {
+        if (isOscillatingHorizontally || isOscillatingVertically ||
+            Math.abs(store.forceX[slot]) >= EPSILON || Math.abs(store.forceY[slot]) >= EPSILON ||
+            Math.abs(store.velX[slot]) >= EPSILON || Math.abs(store.velY[slot]) >= EPSILON) {
+            store.sleepTime[slot] = 0;
+        } else {
+            store.sleepTime[slot] += deltaTime;
+        }
+    }
+
+    // Indica se a posição ou o tamanho mudou desde a última chamada a clearMoved()
+    public boolean hasMoved() {
+        return store.moved[slot];
+    }
+
+    public void clearMoved() {
+        store.moved[slot] = false;
     }
 
     public float getMass() {
-        return mass;
+        return store.mass[slot];
     }
 
     public void setMass(float mass) {
-        this.mass = mass;
+        markChanged();
+        store.mass[slot] = mass;
     }
 
     public float getFriction() {
-        return friction;
+        return store.friction[slot];
     }
 
     public void setFriction(float friction) {
-        this.friction = friction;
+        markChanged();
+        store.friction[slot] = friction;
     }
-    
+
     public Vector2D getVelocity() {
-        return velocity;
+        return new Vector2D(store.velX[slot], store.velY[slot]);
     }
-    
+
+    public float getVelocityX() {
+        return store.velX[slot];
+    }
+
+    public float getVelocityY() {
+        return store.velY[slot];
+    }
+
     public float getSpeed() {
         // Retorna a magnitude do vetor de velocidade
-        return this.velocity.magnitude();
+        float vx = store.velX[slot];
+        float vy = store.velY[slot];
+        return (float)Math.sqrt(vx * vx + vy * vy);
     }
 
     public float getAngularVelocity() {
         return angularVelocity;
     }
-    
+
     // Método para definir a velocidade angular
     public void setAngularVelocity(float angularVelocity) {
+        wake();
         this.angularVelocity = angularVelocity;
     }
-    
+
  // Método para definir a velocidade
     public void setVelocity(Vector2D velocity) {
-        this.velocity = velocity;
+        setVelocity(velocity.x, velocity.y);
+    }
+
+    public void setVelocity(float vx, float vy) {
+        if (vx != store.velX[slot] || vy != store.velY[slot]) {
+            store.velX[slot] = vx;
+            store.velY[slot] = vy;
+            wake();
+        }
     }
-    
+
     public void setAsPlatform(boolean isPlatform) {
+        markChanged();
         this.isPlatform = isPlatform;
     }
 
     public boolean isPlatform() {
         return this.isPlatform;
     }
-    
+
+    public void setBullet(boolean isBullet) {
+        markChanged();
+        this.isBullet = isBullet;
+    }
+
+    public boolean isBullet() {
+        return this.isBullet;
+    }
+
+    // Forma usada na fase estreita; null mantém o teste de caixa (AABB)
+    public Shape getShape() {
+        return shape;
+    }
+
+    public void setShape(Shape shape) {
+        wake();
+        this.shape = shape;
+    }
+
     public boolean isOnPlatform() {
         return onPlatform;
     }
 
     public void setOnPlatform(boolean onPlatform) {
-        this.onPlatform = onPlatform;
+        if (this.onPlatform != onPlatform) {
+            markChanged();
+            this.onPlatform = onPlatform;
+        }
     }
-    
+
     public void startOscillatingHorizontally(float amplitude, long oscillationTime) {
         float frequency = 1.0f / oscillationTime; // Convertendo tempo em frequência
+        wake();
         this.isOscillatingHorizontally = true;
         this.oscillationAmplitudeX = amplitude;
         this.oscillationFrequencyX = (float)(2 * Math.PI * frequency); // Convertendo para radianos por segundo
-        this.initialPosX = this.position.x;
-        this.startTime = System.currentTimeMillis();
+        this.initialPosX = store.posX[slot];
+        this.oscillationElapsedMs = 0;
     }
 
     public void startOscillatingVertically(float amplitude, long oscillationTime) {
         float frequency = 1.0f / oscillationTime; // Convertendo tempo em frequência
+        wake();
         this.isOscillatingVertically = true;
         this.oscillationAmplitudeY = amplitude;
         this.oscillationFrequencyY = (float)(2 * Math.PI * frequency); // Convertendo para radianos por segundo
-        this.initialPosY = this.position.y;
-        this.startTime = System.currentTimeMillis();
+        this.initialPosY = store.posY[slot];
+        this.oscillationElapsedMs = 0;
+    }
+
+    // Marca o corpo como alterado para as próximas capturas de WorldSnapshot
+    void markChanged() {
+        store.changedAt[slot] = store.generation;
+    }
+
+    // Copia para o snapshot o estado que fica na visão e não no BodyStore
+    void saveViewState(WorldSnapshot snapshot, int index) {
+        snapshot.angularVelocity[index] = angularVelocity;
+        snapshot.angularAcceleration[index] = angularAcceleration;
+        snapshot.platform[index] = isPlatform;
+        snapshot.onPlatform[index] = onPlatform;
+        snapshot.bullet[index] = isBullet;
+        snapshot.shape[index] = shape;
+        snapshot.oscillatingX[index] = isOscillatingHorizontally;
+        snapshot.oscillatingY[index] = isOscillatingVertically;
+        snapshot.amplitudeX[index] = oscillationAmplitudeX;
+        snapshot.amplitudeY[index] = oscillationAmplitudeY;
+        snapshot.frequencyX[index] = oscillationFrequencyX;
+        snapshot.frequencyY[index] = oscillationFrequencyY;
+        snapshot.initialX[index] = initialPosX;
+        snapshot.initialY[index] = initialPosY;
+        snapshot.oscillationElapsed[index] = oscillationElapsedMs;
+        snapshot.offsetX[index] = containerOffset != null ? containerOffset.x : 0;
+        snapshot.offsetY[index] = containerOffset != null ? containerOffset.y : 0;
     }
-    
+
+    void restoreViewState(WorldSnapshot snapshot, int index) {
+        angularVelocity = snapshot.angularVelocity[index];
+        angularAcceleration = snapshot.angularAcceleration[index];
+        isPlatform = snapshot.platform[index];
+        onPlatform = snapshot.onPlatform[index];
+        isBullet = snapshot.bullet[index];
+        shape = snapshot.shape[index];
+        isOscillatingHorizontally = snapshot.oscillatingX[index];
+        isOscillatingVertically = snapshot.oscillatingY[index];
+        oscillationAmplitudeX = snapshot.amplitudeX[index];
+        oscillationAmplitudeY = snapshot.amplitudeY[index];
+        oscillationFrequencyX = snapshot.frequencyX[index];
+        oscillationFrequencyY = snapshot.frequencyY[index];
+        initialPosX = snapshot.initialX[index];
+        initialPosY = snapshot.initialY[index];
+        oscillationElapsedMs = snapshot.oscillationElapsed[index];
+        if (containerOffset != null) {
+            containerOffset.set(snapshot.offsetX[index], snapshot.offsetY[index]);
+        }
+    }
+
     //Conteiner setter and getter
     // Método para definir o container
     public void setContainer(Container container) {
+        markChanged();
         this.container = container;
         if (container != null) {
-            this.containerOffset = new Vector2D(this.position.x - container.getParent().getPosition().x,
-                                                this.position.y - container.getParent().getPosition().y);
+            PhysicsObject parent = container.getParent();
+            this.containerOffset = new Vector2D(getX() - parent.getX(), getY() - parent.getY());
         }
     }
 
     public Vector2D getContainerOffset() {
         return containerOffset;
     }
-    
-}
\ No newline at end of file
+
+}
@@ -0,0 +1,263 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Índice das plataformas, separado da fase ampla dos corpos dinâmicos.
+ * As caixas das plataformas ficam ordenadas pelo X mínimo; junto com a maior
+ * largura, isso limita cada consulta a uma busca binária mais as plataformas
+ * próximas no eixo X, em vez de percorrer todos os objetos.
+ */
+public class PlatformIndex {
+    private final List<PhysicsObject> platforms = new ArrayList<>();
+
+    // Cópia das caixas, ordenada por minX
+    private float[] minX = new float[8];
+    private float[] minY = new float[8];
+    private float[] width = new float[8];
+    private float[] height = new float[8];
+    private PhysicsObject[] sorted = new PhysicsObject[8];
+    private int count = 0;
+    private float maxWidth = 0;
+    private boolean dirty = false;
+
+    // Resultado da última varredura
+    private PhysicsObject sweepHit;
+    private float sweepNormalX;
+    private float sweepNormalY;
+
+    public void add(PhysicsObject platform) {
+        for (int i = 0; i < platforms.size(); i++) {
+            if (platforms.get(i) == platform) {
+                return;
+            }
+        }
+        platforms.add(platform);
+        dirty = true;
+    }
+
+    public boolean remove(PhysicsObject platform) {
+        for (int i = 0; i < platforms.size(); i++) {
+            if (platforms.get(i) == platform) {
+                platforms.remove(i);
+                dirty = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void clear() {
+        platforms.clear();
+        Arrays.fill(sorted, 0, count, null);
+        count = 0;
+        maxWidth = 0;
+        dirty = false;
+    }
+
+    public int size() {
+        return platforms.size();
+    }
+
+    /**
+     * Reordena o índice se alguma plataforma se moveu ou mudou de tamanho desde a
+     * última chamada. Custa O(p) quando nada mudou. Adições e remoções já são
+     * aplicadas na consulta seguinte.
+     */
+    public void refresh() {
+        if (!dirty) {
+            for (int i = 0; i < count; i++) {
+                PhysicsObject platform = sorted[i];
+                if (platform.getX() != minX[i] || platform.getY() != minY[i] ||
+                    platform.getWidth() != width[i] || platform.getHeight() != height[i]) {
+                    dirty = true;
+                    break;
+                }
+            }
+            if (!dirty) {
+                return;
+            }
+        }
+        rebuild();
+    }
+
+    /**
+     * Verifica se o objeto sobrepõe alguma plataforma (uma plataforma sobrepõe a si mesma).
+     */
+    public boolean overlapsAny(PhysicsObject obj) {
+        if (dirty) {
+            rebuild();
+        }
+        float x = obj.getX();
+        float y = obj.getY();
+        float right = x + obj.getWidth();
+        float bottom = y + obj.getHeight();
+
+        for (int i = firstWithMinXAbove(x - maxWidth); i < count && minX[i] < right; i++) {
+            if (x < minX[i] + width[i] && y < minY[i] + height[i] && bottom > minY[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Verifica se há uma plataforma abaixo do objeto: o topo dela não está acima da
+     * base do objeto e a distância horizontal entre as origens é menor que a largura dela.
+     */
+    public boolean hasPlatformBelow(PhysicsObject obj) {
+        if (dirty) {
+            rebuild();
+        }
+        float x = obj.getX();
+        float bottom = obj.getY() + obj.getHeight();
+
+        for (int i = firstWithMinXAbove(x - maxWidth); i < count && minX[i] < x + maxWidth; i++) {
+            if (bottom <= minY[i] && Math.abs(x - minX[i]) < width[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Varre a caixa do objeto a partir de (x, y) ao longo do deslocamento (dx, dy) e
+     * procura a primeira plataforma atingida (AABB varrida). Plataformas que já
+     * sobrepõem a caixa no início são ignoradas; essas ficam para a fase estreita.
+     *
+     * @return A fração do deslocamento até o contato, entre 0 e 1, ou 1 se nada for atingido.
+     *         A plataforma e a normal do contato ficam em getSweepHit(), getSweepNormalX() e getSweepNormalY().
+     */
+    public float sweep(PhysicsObject obj, float x, float y, float dx, float dy) {
+        if (dirty) {
+            rebuild();
+        }
+        sweepHit = null;
+        sweepNormalX = 0;
+        sweepNormalY = 0;
+
+        float w = obj.getWidth();
+        float h = obj.getHeight();
+        float left = Math.min(x, x + dx);
+        float right = Math.max(x, x + dx) + w;
+        float best = 1;
+
+        for (int i = firstWithMinXAbove(left - maxWidth); i < count && minX[i] < right; i++) {
+            if (sorted[i] == obj) {
+                continue;
+            }
+
+            float entryX, exitX;
+            if (dx > 0) {
+                entryX = (minX[i] - (x + w)) / dx;
+                exitX = (minX[i] + width[i] - x) / dx;
+            } else if (dx < 0) {
+                entryX = (minX[i] + width[i] - x) / dx;
+                exitX = (minX[i] - (x + w)) / dx;
+            } else if (x < minX[i] + width[i] && x + w > minX[i]) {
+                entryX = Float.NEGATIVE_INFINITY;
+                exitX = Float.POSITIVE_INFINITY;
+            } else {
+                continue;
+            }
+
+            float entryY, exitY;
+            if (dy > 0) {
+                entryY = (minY[i] - (y + h)) / dy;
+                exitY = (minY[i] + height[i] - y) / dy;
+            } else if (dy < 0) {
+                entryY = (minY[i] + height[i] - y) / dy;
+                exitY = (minY[i] - (y + h)) / dy;
+            } else if (y < minY[i] + height[i] && y + h > minY[i]) {
+                entryY = Float.NEGATIVE_INFINITY;
+                exitY = Float.POSITIVE_INFINITY;
+            } else {
+                continue;
+            }
+
+            float entry = Math.max(entryX, entryY);
+            float exit = Math.min(exitX, exitY);
+            if (entry < 0 || entry >= best || entry >= exit) {
+                continue;
+            }
+
+            best = entry;
+            sweepHit = sorted[i];
+            if (entryX > entryY) {
+                sweepNormalX = dx > 0 ? -1 : 1;
+                sweepNormalY = 0;
+            } else {
+                sweepNormalX = 0;
+                sweepNormalY = dy > 0 ? -1 : 1;
+            }
+        }
+        return best;
+    }
+
+    // Plataforma atingida na última varredura, ou null
+    public PhysicsObject getSweepHit() {
+        return sweepHit;
+    }
+
+    public float getSweepNormalX() {
+        return sweepNormalX;
+    }
+
+    public float getSweepNormalY() {
+        return sweepNormalY;
+    }
+
+    // Primeiro índice com minX maior que o valor dado
+    private int firstWithMinXAbove(float value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (minX[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void rebuild() {
+        dirty = false;
+        count = platforms.size();
+        if (count > sorted.length) {
+            int capacity = Math.max(count, sorted.length * 2);
+            minX = new float[capacity];
+            minY = new float[capacity];
+            width = new float[capacity];
+            height = new float[capacity];
+            sorted = new PhysicsObject[capacity];
+        }
+
+        // Ordenação por inserção da própria lista: a ordem do último rebuild costuma continuar quase correta
+        for (int i = 1; i < count; i++) {
+            PhysicsObject platform = platforms.get(i);
+            float x = platform.getX();
+            int j = i - 1;
+            while (j >= 0 && platforms.get(j).getX() > x) {
+                platforms.set(j + 1, platforms.get(j));
+                j--;
+            }
+            platforms.set(j + 1, platform);
+        }
+
+        maxWidth = 0;
+        for (int i = 0; i < count; i++) {
+            PhysicsObject platform = platforms.get(i);
+            minX[i] = platform.getX();
+            minY[i] = platform.getY();
+            width[i] = platform.getWidth();
+            height[i] = platform.getHeight();
+            sorted[i] = platform;
+            maxWidth = Math.max(maxWidth, width[i]);
+        }
+        Arrays.fill(sorted, count, sorted.length, null);
+    }
+}
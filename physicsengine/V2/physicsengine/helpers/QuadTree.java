@@ -1,9 +1,17 @@
 package com.bosonshiggs.physicsengine.helpers;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
-public class QuadTree {
+/**
+ * Quad-tree persistente usada na fase ampla de detecção de colisões.
+ * A árvore guarda o nó de cada objeto, então objetos que continuam no mesmo nó
+ * não custam nada em update(); só os que saíram do nó são reinseridos, e os
+ * subnós são juntados de volta quando a subárvore volta a caber em um nó.
+ */
+public class QuadTree implements Broadphase {
     private final int MAX_OBJECTS = 10;
     private final int MAX_LEVELS = 5;
 
@@ -12,9 +20,21 @@ public class QuadTree {
     private Rect bounds;
     private QuadTree[] nodes;
 
+    private QuadTree parent;
+    private int quadrant = -1; // Índice deste nó dentro do pai
+    private int count = 0; // Objetos neste nó e em todos os subnós
+    private Map<PhysicsObject, QuadTree> locations; // Nó de cada objeto, compartilhado pela árvore inteira
+
     public QuadTree(int level, Rect bounds) {
+        this(level, bounds, null, -1, new IdentityHashMap<PhysicsObject, QuadTree>());
+    }
+
+    private QuadTree(int level, Rect bounds, QuadTree parent, int quadrant, Map<PhysicsObject, QuadTree> locations) {
         this.level = level;
         this.bounds = bounds;
+        this.parent = parent;
+        this.quadrant = quadrant;
+        this.locations = locations;
         this.objects = new ArrayList<PhysicsObject>();
         this.nodes = new QuadTree[4];
     }
@@ -28,6 +48,10 @@ public class QuadTree {
                 nodes[i] = null;
             }
         }
+        count = 0;
+        if (parent == null) {
+            locations.clear();
+        }
     }
 
     // Divide o nó em 4 subnós
@@ -37,10 +61,10 @@ public class QuadTree {
         int x = (int)bounds.x;
         int y = (int)bounds.y;
 
-        nodes[0] = new QuadTree(level + 1, new Rect(x + subWidth, y, subWidth, subHeight));
-        nodes[1] = new QuadTree(level + 1, new Rect(x, y, subWidth, subHeight));
-        nodes[2] = new QuadTree(level + 1, new Rect(x, y + subHeight, subWidth, subHeight));
-        nodes[3] = new QuadTree(level + 1, new Rect(x + subWidth, y + subHeight, subWidth, subHeight));
+        nodes[0] = new QuadTree(level + 1, new Rect(x + subWidth, y, subWidth, subHeight), this, 0, locations);
+        nodes[1] = new QuadTree(level + 1, new Rect(x, y, subWidth, subHeight), this, 1, locations);
+        nodes[2] = new QuadTree(level + 1, new Rect(x, y + subHeight, subWidth, subHeight), this, 2, locations);
+        nodes[3] = new QuadTree(level + 1, new Rect(x + subWidth, y + subHeight, subWidth, subHeight), this, 3, locations);
     }
 
     // Determina o(s) quadrante(s) em que o objeto se encaixa
@@ -49,13 +73,16 @@ public class QuadTree {
         double verticalMidpoint = bounds.x + (bounds.width / 2);
         double horizontalMidpoint = bounds.y + (bounds.height / 2);
 
+        float x = object.getX();
+        float y = object.getY();
+
         // Objeto cabe inteiramente na parte superior
-        boolean topQuadrant = (object.getPosition().y < horizontalMidpoint && object.getPosition().y + object.getSize().y < horizontalMidpoint);
+        boolean topQuadrant = (y < horizontalMidpoint && y + object.getHeight() < horizontalMidpoint);
         // Objeto cabe inteiramente na parte inferior
-        boolean bottomQuadrant = (object.getPosition().y > horizontalMidpoint);
+        boolean bottomQuadrant = (y > horizontalMidpoint);
 
         // Objeto cabe inteiramente no lado esquerdo
-        if (object.getPosition().x < verticalMidpoint && object.getPosition().x + object.getSize().x < verticalMidpoint) {
+        if (x < verticalMidpoint && x + object.getWidth() < verticalMidpoint) {
             if (topQuadrant) {
                 index = 1;
             } else if (bottomQuadrant) {
@@ -63,7 +90,7 @@ public class QuadTree {
             }
         }
         // Objeto cabe inteiramente no lado direito
-        else if (object.getPosition().x > verticalMidpoint) {
+        else if (x > verticalMidpoint) {
             if (topQuadrant) {
                 index = 0;
             } else if (bottomQuadrant) {
@@ -74,30 +101,42 @@ public class QuadTree {
         return index;
     }
 
-    // Insere o objeto na quad-tree. Se o nó exceder a capacidade, ele será dividido e todos os objetos serão redistribuídos.
+    // Insere o objeto na quad-tree (chamar na raiz). Se o objeto já estiver na árvore, equivale a update().
     public void insert(PhysicsObject object) {
+        if (locations.containsKey(object)) {
+            update(object);
+            return;
+        }
+        root().insertInto(object);
+    }
+
+    // Se o nó exceder a capacidade, ele será dividido e todos os objetos serão redistribuídos.
+    private void insertInto(PhysicsObject object) {
+        count++;
+
         if (nodes[0] != null) {
             int index = getIndex(object);
 
             if (index != -1) {
-                nodes[index].insert(object);
+                nodes[index].insertInto(object);
 
                 return;
             }
         }
 
         objects.add(object);
+        locations.put(object, this);
 
         if (objects.size() > MAX_OBJECTS && level < MAX_LEVELS) {
-            if (nodes[0] == null) { 
-                split(); 
+            if (nodes[0] == null) {
+                split();
             }
-        
+
             int i = 0;
             while (i < objects.size()) {
                 int index = getIndex(objects.get(i));
                 if (index != -1) {
-                    nodes[index].insert(objects.remove(i));
+                    nodes[index].insertInto(objects.remove(i));
                 } else {
                     i++;
                 }
@@ -105,18 +144,164 @@ public class QuadTree {
         }
     }
 
+    /**
+     * Remove o objeto da árvore e junta os subnós que ficaram com poucos objetos.
+     *
+     * @param object O objeto a ser removido.
+     * @return true se o objeto estava na árvore.
+     */
+    public boolean remove(PhysicsObject object) {
+        QuadTree node = locations.remove(object);
+        if (node == null) {
+            return false;
+        }
+        node.objects.remove(object);
+
+        // Procura o ancestral mais alto cuja subárvore cabe em um único nó
+        QuadTree mergeTarget = null;
+        for (QuadTree n = node; n != null; n = n.parent) {
+            n.count--;
+            if (n.nodes[0] != null && n.count <= MAX_OBJECTS) {
+                mergeTarget = n;
+            }
+        }
+        if (mergeTarget != null) {
+            mergeTarget.merge();
+        }
+        return true;
+    }
+
+    /**
+     * Atualiza a posição do objeto na árvore. Se ele continua pertencendo ao
+     * mesmo nó, nada é feito; caso contrário ele é removido e reinserido.
+     *
+     * @param object O objeto que se moveu ou mudou de tamanho.
+     */
+    public void update(PhysicsObject object) {
+        QuadTree node = locations.get(object);
+        if (node == null) {
+            root().insertInto(object);
+            return;
+        }
+        if (node.isHomeOf(object)) {
+            return;
+        }
+        remove(object);
+        root().insertInto(object);
+    }
+
+    // Verifica se uma inserção a partir da raiz terminaria neste mesmo nó
+    private boolean isHomeOf(PhysicsObject object) {
+        if (nodes[0] != null && getIndex(object) != -1) {
+            return false;
+        }
+        for (QuadTree n = this; n.parent != null; n = n.parent) {
+            if (n.parent.getIndex(object) != n.quadrant) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Junta os subnós neste nó
+    private void merge() {
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].moveObjectsTo(this);
+            nodes[i] = null;
+        }
+    }
+
+    private void moveObjectsTo(QuadTree target) {
+        for (int i = 0; i < objects.size(); i++) {
+            PhysicsObject object = objects.get(i);
+            target.objects.add(object);
+            locations.put(object, target);
+        }
+        objects.clear();
+        if (nodes[0] != null) {
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i].moveObjectsTo(target);
+                nodes[i] = null;
+            }
+        }
+    }
+
+    private QuadTree root() {
+        QuadTree node = this;
+        while (node.parent != null) {
+            node = node.parent;
+        }
+        return node;
+    }
+
     // Retorna todos os objetos que podem colidir com o objeto dado
     public List<PhysicsObject> retrieve(List<PhysicsObject> returnObjects, PhysicsObject object) {
-        int index = getIndex(object);
-        if (index != -1 && nodes[0] != null) {
-            nodes[index].retrieve(returnObjects, object);
+        if (nodes[0] != null) {
+            int index = getIndex(object);
+            if (index != -1) {
+                nodes[index].retrieve(returnObjects, object);
+            } else {
+                // O objeto cruza as divisões: consulta todos os subnós que ele toca, para
+                // que a consulta a partir de qualquer um dos dois objetos encontre o par.
+                // Os subnós são semiplanos a partir dos pontos médios, como em getIndex().
+                float verticalMidpoint = bounds.x + (bounds.width / 2);
+                float horizontalMidpoint = bounds.y + (bounds.height / 2);
+                boolean left = object.getX() < verticalMidpoint;
+                boolean right = object.getX() + object.getWidth() > verticalMidpoint;
+                boolean top = object.getY() < horizontalMidpoint;
+                boolean bottom = object.getY() + object.getHeight() > horizontalMidpoint;
+
+                if (right && top) nodes[0].retrieve(returnObjects, object);
+                if (left && top) nodes[1].retrieve(returnObjects, object);
+                if (left && bottom) nodes[2].retrieve(returnObjects, object);
+                if (right && bottom) nodes[3].retrieve(returnObjects, object);
+            }
         }
 
-        returnObjects.addAll(objects);
+        for (int i = 0; i < objects.size(); i++) {
+            returnObjects.add(objects.get(i));
+        }
 
         return returnObjects;
     }
 
+    @Override
+    public List<PhysicsObject> query(List<PhysicsObject> returnObjects, float minX, float minY, float maxX, float maxY) {
+        if (nodes[0] != null) {
+            // Mesmos semiplanos de retrieve(), com a região no lugar da caixa do objeto
+            float verticalMidpoint = bounds.x + (bounds.width / 2);
+            float horizontalMidpoint = bounds.y + (bounds.height / 2);
+            boolean left = minX <= verticalMidpoint;
+            boolean right = maxX >= verticalMidpoint;
+            boolean top = minY <= horizontalMidpoint;
+            boolean bottom = maxY >= horizontalMidpoint;
+
+            if (right && top) nodes[0].query(returnObjects, minX, minY, maxX, maxY);
+            if (left && top) nodes[1].query(returnObjects, minX, minY, maxX, maxY);
+            if (left && bottom) nodes[2].query(returnObjects, minX, minY, maxX, maxY);
+            if (right && bottom) nodes[3].query(returnObjects, minX, minY, maxX, maxY);
+        }
+
+        for (int i = 0; i < objects.size(); i++) {
+            returnObjects.add(objects.get(i));
+        }
+
+        return returnObjects;
+    }
+
+    public boolean contains(PhysicsObject object) {
+        return locations.containsKey(object);
+    }
+
+    // Número de objetos neste nó e em todos os subnós
+    public int size() {
+        return count;
+    }
+
+    public Rect getBounds() {
+        return bounds;
+    }
+
     public static class Rect {
         public float x, y, width, height;
 
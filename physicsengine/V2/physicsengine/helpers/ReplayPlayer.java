@@ -0,0 +1,138 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Lê um log gravado por ReplayRecorder, um registro por vez. O registro atual fica
+ * disponível nos getters até advance(); assim quem reproduz pode olhar o tick do
+ * próximo registro antes de decidir aplicá-lo.
+ *
+ * Um registro incompleto no fim do arquivo (gravação interrompida) encerra o log.
+ */
+public class ReplayPlayer {
+    private final ByteBuffer buffer;
+    private final long startTick;
+    private final boolean deterministic;
+
+    // Registro atual
+    private boolean hasRecord;
+    private byte type;
+    private long tick;
+    private int id;
+    private long hash;
+    private float deltaTime;
+    private int valueCount;
+    private final float[] values = new float[ReplayRecorder.MAX_VALUES];
+
+    /**
+     * Abre o log e carrega o primeiro registro.
+     *
+     * @throws IOException Se o arquivo não existir ou não for um log de replay.
+     */
+    public ReplayPlayer(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            input.close();
+        }
+        if (buffer.remaining() < ReplayRecorder.HEADER_BYTES || buffer.getInt() != ReplayRecorder.MAGIC) {
+            throw new IOException("Not a replay log");
+        }
+        int version = buffer.getInt();
+        // Versões anteriores usam um subconjunto dos tipos de registro
+        if (version < 1 || version > ReplayRecorder.VERSION) {
+            throw new IOException("Unsupported replay log version: " + version);
+        }
+        startTick = buffer.getLong();
+        deterministic = buffer.get() != 0;
+        advance();
+    }
+
+    public long getStartTick() {
+        return startTick;
+    }
+
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    public boolean hasRecord() {
+        return hasRecord;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    // Resumo do estado e duração do passo, apenas em registros HASH
+    public long getHash() {
+        return hash;
+    }
+
+    public float getDeltaTime() {
+        return deltaTime;
+    }
+
+    public int getValueCount() {
+        return valueCount;
+    }
+
+    public float getValue(int index) {
+        return values[index];
+    }
+
+    // Passa para o próximo registro; no fim do log, hasRecord() passa a ser false
+    public void advance() {
+        hasRecord = false;
+        if (buffer.remaining() < 9) {
+            return;
+        }
+        int start = buffer.position();
+        byte nextType = buffer.get();
+        long nextTick = buffer.getLong();
+
+        if (nextType == ReplayRecorder.HASH) {
+            if (buffer.remaining() < 12) {
+                buffer.position(start);
+                return;
+            }
+            hash = buffer.getLong();
+            deltaTime = buffer.getFloat();
+            id = 0;
+            valueCount = 0;
+        } else {
+            if (buffer.remaining() < 5) {
+                buffer.position(start);
+                return;
+            }
+            int nextId = buffer.getInt();
+            int count = buffer.get();
+            if (count < 0 || count > values.length || buffer.remaining() < count * 4) {
+                buffer.position(start);
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                values[i] = buffer.getFloat();
+            }
+            id = nextId;
+            valueCount = count;
+        }
+        type = nextType;
+        tick = nextTick;
+        hasRecord = true;
+    }
+}
@@ -0,0 +1,187 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grava em um log binário, só de acréscimo, cada alteração feita nos corpos e um
+ * resumo do estado ao fim de cada passo. O log é lido por ReplayPlayer.
+ *
+ * As gravações só escrevem em um lote em memória; quando o lote enche, ou quando
+ * passou FLUSH_INTERVAL_NANOS desde o primeiro registro dele, o lote segue para a
+ * thread de escrita, e quem grava continua em outro buffer do pool. Assim o passo
+ * da simulação nunca espera pelo disco.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * int magic, int version, long startTick, byte deterministic
+ * registro: byte type, long tick, int id, byte count, float[count] values
+ * registro HASH: byte type, long tick, long hash, float deltaTime
+ * </pre>
+ */
+public class ReplayRecorder {
+    public static final int MAGIC = 0x50455231; // "PER1"
+    public static final int VERSION = 2;
+
+    // Tipos de registro e seus valores
+    public static final byte SPAWN = 1;       // x, y, width, height, mass, friction
+    public static final byte REMOVE = 2;      // -
+    public static final byte CLEAR = 3;       // -
+    public static final byte FORCE = 4;       // forceX, forceY
+    public static final byte VELOCITY = 5;    // velocityX, velocityY
+    public static final byte POSITION = 6;    // x, y
+    public static final byte BODY = 7;        // width, height, mass, friction
+    public static final byte GRAVITY = 8;     // x, y, 1 se todos os corpos foram acordados
+    public static final byte WAKE = 9;        // -
+    public static final byte HASH = 10;
+    public static final byte PLATFORM = 11;   // 1 se virou plataforma, 0 se deixou de ser
+    public static final byte BULLET = 12;     // 1 se virou projétil, 0 se deixou de ser
+    public static final byte VERTEX = 13;     // x, y de um ponto do próximo SHAPE de polígono do mesmo corpo
+    public static final byte SHAPE = 14;      // tipo (SHAPE_BOX, SHAPE_CIRCLE ou SHAPE_POLYGON), dx, dy
+    public static final byte OSCILLATE = 15;  // eixo (0 horizontal, 1 vertical), amplitude, período em ms
+    public static final byte CONTAINER = 16;  // operação (CONTAINER_*), ID do filho em duas metades de 16 bits
+    public static final byte FOLLOW = 17;     // ID do líder em duas metades de 16 bits, distância máxima, distância de parada
+    public static final byte ANGULAR = 18;    // 0 define a velocidade angular, 1 aplica torque; valor
+
+    // Valores de SHAPE: o polígono é montado com os VERTEX anteriores e deslocado por (dx, dy)
+    public static final int SHAPE_BOX = 0;
+    public static final int SHAPE_CIRCLE = 1;
+    public static final int SHAPE_POLYGON = 2;
+
+    // Valores de CONTAINER; o ID do registro é o do contêiner (o do corpo pai)
+    public static final int CONTAINER_CREATE = 0;
+    public static final int CONTAINER_ADD = 1;
+    public static final int CONTAINER_REMOVE = 2;
+
+    static final int HEADER_BYTES = 17;
+    static final int MAX_VALUES = 6;
+    private static final int MAX_RECORD_BYTES = 14 + MAX_VALUES * 4;
+    private static final int BATCH_BYTES = 64 * 1024;
+    private static final long FLUSH_INTERVAL_NANOS = 250000000L;
+
+    private final FileOutputStream output;
+    private final FileChannel channel;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+    private ByteBuffer batch = ByteBuffer.allocate(BATCH_BYTES);
+    private long batchStartNanos = 0;
+    private boolean closed = false;
+    private volatile IOException failure;
+
+    // Um int em dois floats, cada um com 16 bits, para que IDs grandes não percam precisão
+    public static float highBits(int value) {
+        return value >> 16;
+    }
+
+    public static float lowBits(int value) {
+        return value & 0xFFFF;
+    }
+
+    public static int join(float high, float low) {
+        return ((int) high << 16) | (int) low;
+    }
+
+    public ReplayRecorder(File file, long startTick, boolean deterministic) throws IOException {
+        this.output = new FileOutputStream(file);
+        this.channel = output.getChannel();
+        batch.putInt(MAGIC).putInt(VERSION).putLong(startTick).put((byte)(deterministic ? 1 : 0));
+    }
+
+    /**
+     * Grava uma alteração feita antes do passo informado.
+     *
+     * @param values Valores do registro, conforme o tipo (no máximo MAX_VALUES).
+     */
+    public synchronized void record(byte type, long tick, int id, float... values) {
+        if (closed) return;
+        if (batch.remaining() < MAX_RECORD_BYTES) {
+            submitBatch();
+        }
+        markBatchStart();
+        batch.put(type).putLong(tick).putInt(id).put((byte) values.length);
+        for (float value : values) {
+            batch.putFloat(value);
+        }
+    }
+
+    // Grava o resumo do estado ao fim do passo; também envia o lote se ele estiver pendente há muito tempo
+    public synchronized void recordHash(long tick, long hash, float deltaTime) {
+        if (closed) return;
+        if (batch.remaining() < MAX_RECORD_BYTES) {
+            submitBatch();
+        }
+        markBatchStart();
+        batch.put(HASH).putLong(tick).putLong(hash).putFloat(deltaTime);
+        if (System.nanoTime() - batchStartNanos >= FLUSH_INTERVAL_NANOS) {
+            submitBatch();
+        }
+    }
+
+    /**
+     * Envia o que falta, espera a thread de escrita terminar e fecha o arquivo.
+     *
+     * @throws IOException Se alguma escrita falhou durante a gravação.
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            submitBatch();
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.force(false);
+        } finally {
+            output.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void markBatchStart() {
+        if (batch.position() == 0) {
+            batchStartNanos = System.nanoTime();
+        }
+    }
+
+    // Troca o lote atual por um buffer do pool e entrega o cheio à thread de escrita
+    private void submitBatch() {
+        if (batch.position() == 0) {
+            return;
+        }
+        final ByteBuffer full = batch;
+        full.flip();
+        synchronized (pool) {
+            batch = pool.isEmpty() ? ByteBuffer.allocate(BATCH_BYTES) : pool.poll();
+        }
+        writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (full.hasRemaining()) {
+                        channel.write(full);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+                full.clear();
+                synchronized (pool) {
+                    pool.add(full);
+                }
+            }
+        });
+    }
+}
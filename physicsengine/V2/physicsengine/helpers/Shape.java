@@ -0,0 +1,129 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+/**
+ * Forma de colisão de um objeto que não é uma simples caixa.
+ * A caixa do objeto (posição, largura e altura) continua sendo usada pela fase
+ * ampla; a forma só refina o teste da fase estreita em ShapeCollision.
+ * Um círculo ocupa o maior círculo inscrito na caixa. Um polígono convexo guarda
+ * os vértices relativos à posição do objeto, em ordem de área positiva
+ * (anti-horário com o eixo Y para cima), e as normais das arestas já calculadas.
+ */
+public class Shape {
+
+    public enum Type {
+        CIRCLE,
+        POLYGON
+    }
+
+    private static final Shape CIRCLE = new Shape(Type.CIRCLE, null, null, null, null);
+
+    private final Type type;
+    private final float[] vertexX;
+    private final float[] vertexY;
+    private final float[] normalX;
+    private final float[] normalY;
+
+    private Shape(Type type, float[] vertexX, float[] vertexY, float[] normalX, float[] normalY) {
+        this.type = type;
+        this.vertexX = vertexX;
+        this.vertexY = vertexY;
+        this.normalX = normalX;
+        this.normalY = normalY;
+    }
+
+    public static Shape circle() {
+        return CIRCLE;
+    }
+
+    /**
+     * Cria um polígono convexo. Os vértices podem vir em qualquer sentido de giro.
+     *
+     * @param xs Coordenadas X dos vértices, relativas à posição do objeto.
+     * @param ys Coordenadas Y dos vértices, relativas à posição do objeto.
+     * @return O polígono, ou null se houver menos de 3 vértices ou o polígono não for convexo.
+     */
+    public static Shape polygon(float[] xs, float[] ys) {
+        int count = xs.length;
+        if (count < 3 || ys.length != count) {
+            return null;
+        }
+
+        // Área com sinal: negativa significa sentido horário, então a ordem é invertida
+        float area = 0;
+        for (int i = 0; i < count; i++) {
+            int j = (i + 1) % count;
+            area += xs[i] * ys[j] - xs[j] * ys[i];
+        }
+        if (area == 0) {
+            return null;
+        }
+
+        float[] vx = new float[count];
+        float[] vy = new float[count];
+        for (int i = 0; i < count; i++) {
+            int source = area > 0 ? i : count - 1 - i;
+            vx[i] = xs[source];
+            vy[i] = ys[source];
+        }
+
+        float[] nx = new float[count];
+        float[] ny = new float[count];
+        for (int i = 0; i < count; i++) {
+            int j = (i + 1) % count;
+            int k = (i + 2) % count;
+            float edgeX = vx[j] - vx[i];
+            float edgeY = vy[j] - vy[i];
+            // Em um polígono convexo todas as curvas têm o mesmo sentido
+            if (edgeX * (vy[k] - vy[j]) - edgeY * (vx[k] - vx[j]) < 0) {
+                return null;
+            }
+            float length = (float)Math.sqrt(edgeX * edgeX + edgeY * edgeY);
+            if (length == 0) {
+                return null;
+            }
+            nx[i] = edgeY / length;
+            ny[i] = -edgeX / length;
+        }
+        return new Shape(Type.POLYGON, vx, vy, nx, ny);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getVertexCount() {
+        return vertexX == null ? 0 : vertexX.length;
+    }
+
+    public float getVertexX(int index) {
+        return vertexX[index];
+    }
+
+    public float getVertexY(int index) {
+        return vertexY[index];
+    }
+
+    // Normal unitária da aresta que vai do vértice index ao seguinte, apontando para fora
+    public float getNormalX(int index) {
+        return normalX[index];
+    }
+
+    public float getNormalY(int index) {
+        return normalY[index];
+    }
+
+    // Cópia do polígono deslocada pelo vetor dado, com as mesmas normais
+    public Shape translate(float dx, float dy) {
+        if (type != Type.POLYGON) {
+            return this;
+        }
+        int count = vertexX.length;
+        float[] vx = new float[count];
+        float[] vy = new float[count];
+        for (int i = 0; i < count; i++) {
+            vx[i] = vertexX[i] + dx;
+            vy[i] = vertexY[i] + dy;
+        }
+        return new Shape(type, vx, vy, normalX, normalY);
+    }
+}
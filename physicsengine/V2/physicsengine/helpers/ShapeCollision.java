@@ -0,0 +1,218 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+/**
+ * Teste da fase estreita entre dois objetos cujas caixas já se sobrepõem.
+ * Duas caixas seguem o caminho rápido de AABB; círculos e polígonos convexos usam
+ * o teorema do eixo separador (SAT). Em caso de colisão, a normal (unitária, do
+ * primeiro objeto para o segundo) e a penetração ficam nos getters.
+ * Guarda resultados intermediários nos próprios campos, então cada thread deve
+ * usar sua própria instância.
+ */
+public class ShapeCollision {
+    private float normalX;
+    private float normalY;
+    private float depth;
+
+    // Última projeção calculada por project()
+    private float projectionMin;
+    private float projectionMax;
+
+    public float getNormalX() {
+        return normalX;
+    }
+
+    public float getNormalY() {
+        return normalY;
+    }
+
+    public float getDepth() {
+        return depth;
+    }
+
+    /**
+     * Testa se as formas dos dois objetos se sobrepõem. Supõe que as caixas já se
+     * sobrepõem (PhysicsObject.collidesWith).
+     *
+     * @return true se as formas colidem; a normal e a penetração ficam disponíveis.
+     */
+    public boolean test(PhysicsObject a, PhysicsObject b) {
+        Shape shapeA = a.getShape();
+        Shape shapeB = b.getShape();
+
+        if (shapeA == null && shapeB == null) {
+            testBoxes(a, b);
+            return true;
+        }
+        if (isCircle(shapeA) && isCircle(shapeB)) {
+            return testCircles(a, b);
+        }
+
+        depth = Float.MAX_VALUE;
+        if (!testAxesOf(shapeA, a, b) || !testAxesOf(shapeB, a, b)) {
+            return false;
+        }
+        if (isCircle(shapeA) && !testCircleAxis(a, b, a, b)) {
+            return false;
+        }
+        return !isCircle(shapeB) || testCircleAxis(b, a, a, b);
+    }
+
+    // Caminho rápido de duas caixas: normal no eixo e no sentido que separam com o menor deslocamento
+    private void testBoxes(PhysicsObject a, PhysicsObject b) {
+        float pushRight = a.getX() + a.getWidth() - b.getX();
+        float pushLeft = b.getX() + b.getWidth() - a.getX();
+        float pushDown = a.getY() + a.getHeight() - b.getY();
+        float pushUp = b.getY() + b.getHeight() - a.getY();
+        float overlapX = Math.min(pushRight, pushLeft);
+        float overlapY = Math.min(pushDown, pushUp);
+        if (overlapX < overlapY) {
+            normalX = pushRight <= pushLeft ? 1 : -1;
+            normalY = 0;
+            depth = overlapX;
+        } else {
+            normalX = 0;
+            normalY = pushDown <= pushUp ? 1 : -1;
+            depth = overlapY;
+        }
+    }
+
+    private boolean testCircles(PhysicsObject a, PhysicsObject b) {
+        float dx = centerX(b) - centerX(a);
+        float dy = centerY(b) - centerY(a);
+        float radii = radius(a) + radius(b);
+        float distanceSquared = dx * dx + dy * dy;
+        if (distanceSquared >= radii * radii) {
+            return false;
+        }
+
+        float distance = (float)Math.sqrt(distanceSquared);
+        if (distance == 0) {
+            normalX = 0;
+            normalY = 1;
+        } else {
+            normalX = dx / distance;
+            normalY = dy / distance;
+        }
+        depth = radii - distance;
+        return true;
+    }
+
+    // Testa os eixos próprios de um objeto: as normais das arestas do polígono ou os eixos da caixa
+    private boolean testAxesOf(Shape shape, PhysicsObject a, PhysicsObject b) {
+        if (shape == null) {
+            return testAxis(1, 0, a, b) && testAxis(0, 1, a, b);
+        }
+        if (shape.getType() == Shape.Type.POLYGON) {
+            for (int i = 0; i < shape.getVertexCount(); i++) {
+                if (!testAxis(shape.getNormalX(i), shape.getNormalY(i), a, b)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Eixo do centro do círculo até o vértice mais próximo do outro objeto
+    private boolean testCircleAxis(PhysicsObject circle, PhysicsObject other, PhysicsObject a, PhysicsObject b) {
+        float cx = centerX(circle);
+        float cy = centerY(circle);
+        Shape shape = other.getShape();
+        int count = shape == null ? 4 : shape.getVertexCount();
+
+        float bestX = 0;
+        float bestY = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            float vx = vertexX(other, shape, i) - cx;
+            float vy = vertexY(other, shape, i) - cy;
+            float distance = vx * vx + vy * vy;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestX = vx;
+                bestY = vy;
+            }
+        }
+        if (bestDistance == 0) {
+            return true;
+        }
+        float length = (float)Math.sqrt(bestDistance);
+        return testAxis(bestX / length, bestY / length, a, b);
+    }
+
+    /*
+     * Projeta os dois objetos no eixo. A penetração no eixo é o menor deslocamento do
+     * segundo objeto, em um dos dois sentidos, que separa as projeções; o menor entre
+     * todos os eixos define a normal, já orientada do primeiro objeto para o segundo.
+     */
+    private boolean testAxis(float axisX, float axisY, PhysicsObject a, PhysicsObject b) {
+        project(a, axisX, axisY);
+        float minA = projectionMin;
+        float maxA = projectionMax;
+        project(b, axisX, axisY);
+
+        float forward = maxA - projectionMin;
+        float backward = projectionMax - minA;
+        if (forward <= 0 || backward <= 0) {
+            return false;
+        }
+        float overlap = Math.min(forward, backward);
+        if (overlap < depth) {
+            depth = overlap;
+            normalX = forward <= backward ? axisX : -axisX;
+            normalY = forward <= backward ? axisY : -axisY;
+        }
+        return true;
+    }
+
+    private void project(PhysicsObject obj, float axisX, float axisY) {
+        Shape shape = obj.getShape();
+        if (isCircle(shape)) {
+            float center = centerX(obj) * axisX + centerY(obj) * axisY;
+            float r = radius(obj);
+            projectionMin = center - r;
+            projectionMax = center + r;
+            return;
+        }
+
+        int count = shape == null ? 4 : shape.getVertexCount();
+        projectionMin = Float.MAX_VALUE;
+        projectionMax = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            float value = vertexX(obj, shape, i) * axisX + vertexY(obj, shape, i) * axisY;
+            projectionMin = Math.min(projectionMin, value);
+            projectionMax = Math.max(projectionMax, value);
+        }
+    }
+
+    // Vértices em coordenadas do mundo; uma caixa tem os quatro cantos
+    private static float vertexX(PhysicsObject obj, Shape shape, int index) {
+        if (shape == null) {
+            return index == 1 || index == 2 ? obj.getX() + obj.getWidth() : obj.getX();
+        }
+        return obj.getX() + shape.getVertexX(index);
+    }
+
+    private static float vertexY(PhysicsObject obj, Shape shape, int index) {
+        if (shape == null) {
+            return index >= 2 ? obj.getY() + obj.getHeight() : obj.getY();
+        }
+        return obj.getY() + shape.getVertexY(index);
+    }
+
+    // Centro da caixa, que também é o centro de um círculo
+    private static float centerX(PhysicsObject obj) {
+        return obj.getX() + obj.getWidth() / 2;
+    }
+
+    private static float centerY(PhysicsObject obj) {
+        return obj.getY() + obj.getHeight() / 2;
+    }
+
+    private static float radius(PhysicsObject obj) {
+        return Math.min(obj.getWidth(), obj.getHeight()) / 2;
+    }
+
+    private static boolean isCircle(Shape shape) {
+        return shape != null && shape.getType() == Shape.Type.CIRCLE;
+    }
+}
@@ -0,0 +1,241 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fase ampla por grade uniforme com espalhamento (spatial hash).
+ * Indicada para muitos corpos de tamanho parecido, onde a quad-tree acumula nos
+ * nós pais os objetos que cruzam as divisões. As células são reconstruídas de uma
+ * vez, por contagem, na primeira consulta depois de alguma mudança; a tabela
+ * célula → corpos fica em vetores de int, sem objetos por célula.
+ */
+public class SpatialHashGrid implements Broadphase {
+    private float cellSize;
+
+    // Limites de cada proxy, indexados pelo número do proxy
+    private float[] minX = new float[16];
+    private float[] minY = new float[16];
+    private float[] maxX = new float[16];
+    private float[] maxY = new float[16];
+    private PhysicsObject[] proxies = new PhysicsObject[16];
+    private int[] queryStamp = new int[16]; // Última consulta que já retornou o proxy
+    private int proxyCount = 0; // Maior número de proxy já usado
+    private int[] freeProxies = new int[16];
+    private int freeCount = 0;
+    private final Map<PhysicsObject, Integer> proxyIndex = new IdentityHashMap<>();
+
+    // Tabela de células: os proxies da célula h ficam em cellEntries[cellStart[h] .. cellStart[h + 1] - 1]
+    private int[] cellStart = new int[1];
+    private int[] cellEntries = new int[16];
+    private int tableMask = 0;
+    private boolean dirty = true;
+    private int currentStamp = 0;
+
+    /**
+     * Construtor da classe SpatialHashGrid.
+     *
+     * @param cellSize Lado de cada célula; em geral próximo ao tamanho típico dos corpos.
+     */
+    public SpatialHashGrid(float cellSize) {
+        setCellSize(cellSize);
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    public void setCellSize(float cellSize) {
+        if (cellSize > 0 && cellSize != this.cellSize) {
+            this.cellSize = cellSize;
+            dirty = true;
+        }
+    }
+
+    @Override
+    public void insert(PhysicsObject object) {
+        if (proxyIndex.containsKey(object)) {
+            update(object);
+            return;
+        }
+
+        int proxy;
+        if (freeCount > 0) {
+            proxy = freeProxies[--freeCount];
+        } else {
+            proxy = proxyCount++;
+            if (proxy == proxies.length) {
+                int capacity = proxies.length * 2;
+                minX = Arrays.copyOf(minX, capacity);
+                minY = Arrays.copyOf(minY, capacity);
+                maxX = Arrays.copyOf(maxX, capacity);
+                maxY = Arrays.copyOf(maxY, capacity);
+                proxies = Arrays.copyOf(proxies, capacity);
+                queryStamp = Arrays.copyOf(queryStamp, capacity);
+                freeProxies = Arrays.copyOf(freeProxies, capacity);
+            }
+        }
+        proxies[proxy] = object;
+        proxyIndex.put(object, proxy);
+        copyBounds(proxy, object);
+        dirty = true;
+    }
+
+    @Override
+    public boolean remove(PhysicsObject object) {
+        Integer proxy = proxyIndex.remove(object);
+        if (proxy == null) {
+            return false;
+        }
+        proxies[proxy] = null;
+        freeProxies[freeCount++] = proxy;
+        dirty = true;
+        return true;
+    }
+
+    @Override
+    public void update(PhysicsObject object) {
+        Integer proxy = proxyIndex.get(object);
+        if (proxy == null) {
+            insert(object);
+            return;
+        }
+        copyBounds(proxy, object);
+        dirty = true;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(proxies, 0, proxyCount, null);
+        proxyIndex.clear();
+        proxyCount = 0;
+        freeCount = 0;
+        dirty = true;
+    }
+
+    // Retorna os objetos das células cobertas pelo objeto dado, sem repetições
+    @Override
+    public List<PhysicsObject> retrieve(List<PhysicsObject> returnObjects, PhysicsObject object) {
+        return query(returnObjects, object.getX(), object.getY(),
+                object.getX() + object.getWidth(), object.getY() + object.getHeight());
+    }
+
+    @Override
+    public List<PhysicsObject> query(List<PhysicsObject> returnObjects, float minX, float minY, float maxX, float maxY) {
+        if (dirty) {
+            rebuild();
+        }
+        int stamp = nextStamp();
+        int cx0 = cell(minX);
+        int cy0 = cell(minY);
+        int cx1 = cell(maxX);
+        int cy1 = cell(maxY);
+
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int h = hash(cx, cy);
+                for (int e = cellStart[h]; e < cellStart[h + 1]; e++) {
+                    int proxy = cellEntries[e];
+                    if (queryStamp[proxy] != stamp) {
+                        queryStamp[proxy] = stamp;
+                        returnObjects.add(proxies[proxy]);
+                    }
+                }
+            }
+        }
+        return returnObjects;
+    }
+
+    @Override
+    public int size() {
+        return proxyIndex.size();
+    }
+
+    // Reconstrói a tabela de células em duas passadas: conta as entradas por célula e depois as distribui
+    private void rebuild() {
+        dirty = false;
+
+        int entryCount = 0;
+        for (int p = 0; p < proxyCount; p++) {
+            if (proxies[p] != null) {
+                entryCount += (cell(maxX[p]) - cell(minX[p]) + 1) * (cell(maxY[p]) - cell(minY[p]) + 1);
+            }
+        }
+
+        // Tabela com potência de dois e pelo menos o dobro de entradas, para poucas colisões de espalhamento
+        int tableSize = 16;
+        while (tableSize < entryCount * 2) {
+            tableSize <<= 1;
+        }
+        if (cellStart.length != tableSize + 1) {
+            cellStart = new int[tableSize + 1];
+            tableMask = tableSize - 1;
+        } else {
+            Arrays.fill(cellStart, 0);
+        }
+        if (cellEntries.length < entryCount) {
+            cellEntries = new int[Math.max(entryCount, cellEntries.length * 2)];
+        }
+
+        // Conta as entradas de cada célula (deslocado em uma posição para virar início após a soma)
+        for (int p = 0; p < proxyCount; p++) {
+            if (proxies[p] == null) {
+                continue;
+            }
+            int cx1 = cell(maxX[p]);
+            int cy1 = cell(maxY[p]);
+            for (int cy = cell(minY[p]); cy <= cy1; cy++) {
+                for (int cx = cell(minX[p]); cx <= cx1; cx++) {
+                    cellStart[hash(cx, cy) + 1]++;
+                }
+            }
+        }
+        for (int h = 0; h < tableSize; h++) {
+            cellStart[h + 1] += cellStart[h];
+        }
+
+        // Distribui os proxies usando cellStart como cursor e depois restaura os inícios
+        for (int p = 0; p < proxyCount; p++) {
+            if (proxies[p] == null) {
+                continue;
+            }
+            int cx1 = cell(maxX[p]);
+            int cy1 = cell(maxY[p]);
+            for (int cy = cell(minY[p]); cy <= cy1; cy++) {
+                for (int cx = cell(minX[p]); cx <= cx1; cx++) {
+                    cellEntries[cellStart[hash(cx, cy)]++] = p;
+                }
+            }
+        }
+        for (int h = tableSize; h > 0; h--) {
+            cellStart[h] = cellStart[h - 1];
+        }
+        cellStart[0] = 0;
+    }
+
+    private int cell(float coordinate) {
+        return (int)Math.floor(coordinate / cellSize);
+    }
+
+    private int hash(int cx, int cy) {
+        return ((cx * 73856093) ^ (cy * 19349663)) & tableMask;
+    }
+
+    private int nextStamp() {
+        if (++currentStamp == 0) {
+            // O contador deu a volta; zera as marcas para não confundir consultas antigas
+            Arrays.fill(queryStamp, 0);
+            currentStamp = 1;
+        }
+        return currentStamp;
+    }
+
+    private void copyBounds(int proxy, PhysicsObject object) {
+        minX[proxy] = object.getX();
+        minY[proxy] = object.getY();
+        maxX[proxy] = object.getX() + object.getWidth();
+        maxY[proxy] = object.getY() + object.getHeight();
+    }
+}
@@ -17,6 +17,12 @@ public class Sprite {
     private Vector2D customOrigin = new Vector2D(0, 0);
     // Limites da caixa de colisão ajustados
     private RectF bounds = new RectF();
+    // Posição interpolada copiada por capture(); o desenho usa só a cópia
+    private float drawX;
+    private float drawY;
+    // De onde a sprite veio, para salvar e recarregar o mundo (ver WorldFile)
+    private String imagePath;
+    private String layerName;
 
     /**
      * Construtor da classe Sprite.
@@ -30,18 +36,24 @@ public class Sprite {
     }
 
     /**
-     * Desenha a sprite no canvas, usando a posição do objeto de física associado.
+     * Copia a posição do objeto de física, interpolada entre o passo anterior e o
+     * atual, e atualiza os limites. Chame sob o monitor do BodyStore: fora dele o
+     * slot do objeto pode mudar no meio da leitura.
      * 
-     * @param canvas O canvas no qual a sprite será desenhada.
+     * @param alpha Fator de interpolação entre 0 (passo anterior) e 1 (passo atual).
      */
-    
+    public void capture(float alpha) {
+        drawX = physicsObject.getInterpolatedX(alpha);
+        drawY = physicsObject.getInterpolatedY(alpha);
+        updateBounds();
+    }
+
     /**
-     * Desenha a sprite no canvas, usando a posição do objeto de física associado.
+     * Desenha a sprite no canvas, na posição copiada pelo último capture().
      * Este método agora também leva em conta a escala, rotação e visibilidade.
      * 
      * @param canvas O canvas no qual a sprite será desenhada.
      */
-
     public void draw(Canvas canvas) {
         if (!isVisible) return; // Não desenha se a sprite estiver invisível
 
@@ -81,8 +93,7 @@ public class Sprite {
         matrix.postTranslate(-pivotX, -pivotY);
         matrix.postScale(scale, scale);
         matrix.postRotate(rotation);
-        Vector2D position = physicsObject.getPosition();
-        matrix.postTranslate(position.x + pivotX, position.y + pivotY);
+        matrix.postTranslate(drawX + pivotX, drawY + pivotY);
 
         canvas.drawBitmap(image, matrix, null);
     }
@@ -154,6 +165,26 @@ public class Sprite {
     public OriginPoint getOriginPoint() {
         return this.originPoint;
     }
+
+    public Vector2D getCustomOrigin() {
+        return this.customOrigin;
+    }
+
+    public String getImagePath() {
+        return imagePath;
+    }
+
+    public void setImagePath(String imagePath) {
+        this.imagePath = imagePath;
+    }
+
+    public String getLayerName() {
+        return layerName;
+    }
+
+    public void setLayerName(String layerName) {
+        this.layerName = layerName;
+    }
     
     /**
      * Atualiza a posição do objeto de física associado à sprite.
@@ -163,7 +194,7 @@ public class Sprite {
      */
     public void updatePosition(float x, float y) {
         if (this.physicsObject != null) {
-            this.physicsObject.setPosition(new Vector2D(x, y));
+            this.physicsObject.setPosition(x, y);
             updateBounds(); // Atualiza os limites após a mudança de posição
         }
     }
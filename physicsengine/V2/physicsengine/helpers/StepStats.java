@@ -0,0 +1,132 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Tempos de cada fase do passo, em nanossegundos, acumulados em histogramas de
+ * tamanho fixo. Cada potência de dois é dividida em SUB_BUCKETS faixas, então os
+ * percentis têm erro relativo de no máximo 1/SUB_BUCKETS e a memória não cresce
+ * com o número de passos.
+ */
+public class StepStats {
+
+    /**
+     * Recebe os tempos de cada passo assim que ele termina, na thread do passo.
+     * O vetor é reutilizado entre os passos; copie-o se precisar guardá-lo.
+     */
+    public interface Listener {
+        void onStep(long tick, long[] phaseNanos);
+    }
+
+    // Fases, usadas como índice nos vetores de tempos
+    public static final int INTEGRATION = 0;   // Integração, projéteis e contêineres
+    public static final int BROADPHASE = 1;    // Atualização da fase ampla e coleta dos pares
+    public static final int NARROWPHASE = 2;   // Testes, respostas, resolvedor de contatos e sono
+    public static final int PLATFORMS = 3;     // Índice de plataformas e estado "sobre plataforma"
+    public static final int FOLLOWING = 4;     // Seguidores
+    public static final int EVENTS = 5;        // Eventos de colisão e de posição
+    public static final int TOTAL = 6;         // Passo inteiro, inclusive o que não pertence a uma fase
+    public static final int PHASES = 7;
+
+    private static final String[] NAMES = {
+        "Integration", "Broadphase", "Narrowphase", "Platforms", "Following", "Events", "Total"
+    };
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Até 2^40 ns (cerca de 18 minutos); tempos maiores ficam na última faixa
+    private static final int BUCKETS = (40 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[][] histograms = new long[PHASES][BUCKETS];
+    private final long[] totals = new long[PHASES];
+    private final long[] maximums = new long[PHASES];
+    private final long[] last = new long[PHASES];
+    private long steps = 0;
+
+    public static String getPhaseName(int phase) {
+        return NAMES[phase];
+    }
+
+    // Acrescenta os tempos de um passo, indexados pelas constantes de fase
+    public synchronized void addStep(long[] phaseNanos) {
+        for (int phase = 0; phase < PHASES; phase++) {
+            long nanos = Math.max(0, phaseNanos[phase]);
+            histograms[phase][bucketOf(nanos)]++;
+            totals[phase] += nanos;
+            if (nanos > maximums[phase]) {
+                maximums[phase] = nanos;
+            }
+            last[phase] = nanos;
+        }
+        steps++;
+    }
+
+    public synchronized long getStepCount() {
+        return steps;
+    }
+
+    public synchronized long getLastNanos(int phase) {
+        return last[phase];
+    }
+
+    public synchronized long getMeanNanos(int phase) {
+        return steps == 0 ? 0 : totals[phase] / steps;
+    }
+
+    public synchronized long getMaxNanos(int phase) {
+        return maximums[phase];
+    }
+
+    /**
+     * Retorna o tempo abaixo do qual ficam os passos da fração informada.
+     *
+     * @param fraction Entre 0 e 1; 0.99 dá o percentil 99.
+     * @return O limite superior da faixa do histograma, nunca acima do máximo observado.
+     */
+    public synchronized long getPercentileNanos(int phase, double fraction) {
+        if (steps == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * steps));
+        long seen = 0;
+        long[] histogram = histograms[phase];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += histogram[bucket];
+            if (seen >= target) {
+                return Math.min(maximums[phase], upperBound(bucket));
+            }
+        }
+        return maximums[phase];
+    }
+
+    public synchronized void reset() {
+        for (long[] histogram : histograms) {
+            Arrays.fill(histogram, 0);
+        }
+        Arrays.fill(totals, 0);
+        Arrays.fill(maximums, 0);
+        Arrays.fill(last, 0);
+        steps = 0;
+    }
+
+    // Valores abaixo de SUB_BUCKETS têm faixa própria; acima, a faixa é a potência de dois mais os bits seguintes
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub);
+    }
+
+    // Maior valor que cai na faixa
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,346 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fase ampla por ordenação e varredura (sort and sweep) nos eixos X e Y.
+ * As extremidades de cada caixa ficam em vetores ordenados por eixo e são
+ * reordenadas por inserção a cada passo; como os corpos se movem pouco entre
+ * passos, isso é quase linear. Os pares sobrepostos são mantidos entre passos e
+ * só mudam quando uma extremidade cruza outra.
+ */
+public class SweepAndPrune implements Broadphase {
+
+    // Limites de cada proxy, indexados pelo número do proxy
+    private float[] minX = new float[16];
+    private float[] minY = new float[16];
+    private float[] maxX = new float[16];
+    private float[] maxY = new float[16];
+    private PhysicsObject[] proxies = new PhysicsObject[16];
+    private int proxyCount = 0; // Maior número de proxy já usado
+    private int[] freeProxies = new int[16];
+    private int freeCount = 0;
+    private final Map<PhysicsObject, Integer> proxyIndex = new IdentityHashMap<>();
+
+    // Extremidades ordenadas de cada eixo, codificadas como (proxy << 1) | (1 se for máximo)
+    private int[] endpointsX = new int[32];
+    private int[] endpointsY = new int[32];
+    private float[] valuesX = new float[32];
+    private float[] valuesY = new float[32];
+    private int endpointCount = 0;
+    // Extremidades ordenadas na última chamada a updatePairs(); as inseridas depois ficam no fim, fora de ordem
+    private int sortedCount = 0;
+
+    // Proxies inseridos ou movidos desde a última ordenação; a posição ordenada deles está desatualizada
+    private boolean[] stale = new boolean[16];
+    private int[] staleProxies = new int[16];
+    private int staleCount = 0;
+    // Maior largura já vista, que limita até onde query() volta no eixo X
+    private float maxWidth = 0;
+
+    // Pares sobrepostos, com índice pela chave (menor proxy << 32 | maior proxy)
+    private final LongIntHashMap pairIndex = new LongIntHashMap(16);
+    private int[] pairProxyA = new int[16];
+    private int[] pairProxyB = new int[16];
+    private int pairCount = 0;
+
+    @Override
+    public void insert(PhysicsObject object) {
+        if (proxyIndex.containsKey(object)) {
+            update(object);
+            return;
+        }
+
+        int proxy;
+        if (freeCount > 0) {
+            proxy = freeProxies[--freeCount];
+        } else {
+            proxy = proxyCount++;
+            if (proxy == proxies.length) {
+                int capacity = proxies.length * 2;
+                minX = Arrays.copyOf(minX, capacity);
+                minY = Arrays.copyOf(minY, capacity);
+                maxX = Arrays.copyOf(maxX, capacity);
+                maxY = Arrays.copyOf(maxY, capacity);
+                proxies = Arrays.copyOf(proxies, capacity);
+                freeProxies = Arrays.copyOf(freeProxies, capacity);
+                stale = Arrays.copyOf(stale, capacity);
+                staleProxies = Arrays.copyOf(staleProxies, capacity);
+            }
+        }
+        proxies[proxy] = object;
+        proxyIndex.put(object, proxy);
+        copyBounds(proxy, object);
+
+        // As novas extremidades entram no fim e encontram seu lugar na próxima ordenação
+        if (endpointCount + 2 > endpointsX.length) {
+            int capacity = endpointsX.length * 2;
+            endpointsX = Arrays.copyOf(endpointsX, capacity);
+            endpointsY = Arrays.copyOf(endpointsY, capacity);
+            valuesX = Arrays.copyOf(valuesX, capacity);
+            valuesY = Arrays.copyOf(valuesY, capacity);
+        }
+        endpointsX[endpointCount] = proxy << 1;
+        endpointsX[endpointCount + 1] = (proxy << 1) | 1;
+        endpointsY[endpointCount] = proxy << 1;
+        endpointsY[endpointCount + 1] = (proxy << 1) | 1;
+        endpointCount += 2;
+    }
+
+    @Override
+    public boolean remove(PhysicsObject object) {
+        Integer index = proxyIndex.remove(object);
+        if (index == null) {
+            return false;
+        }
+        int proxy = index;
+
+        // Remove os pares do proxy
+        for (int i = pairCount - 1; i >= 0; i--) {
+            if (pairProxyA[i] == proxy || pairProxyB[i] == proxy) {
+                removePair(pairProxyA[i], pairProxyB[i]);
+            }
+        }
+
+        // Remove as extremidades mantendo a ordem dos demais
+        int write = 0;
+        int removedSorted = 0;
+        for (int read = 0; read < endpointCount; read++) {
+            if ((endpointsX[read] >> 1) != proxy) {
+                endpointsX[write] = endpointsX[read];
+                valuesX[write] = valuesX[read];
+                write++;
+            } else if (read < sortedCount) {
+                removedSorted++;
+            }
+        }
+        sortedCount -= removedSorted;
+        write = 0;
+        for (int read = 0; read < endpointCount; read++) {
+            if ((endpointsY[read] >> 1) != proxy) {
+                endpointsY[write] = endpointsY[read];
+                valuesY[write] = valuesY[read];
+                write++;
+            }
+        }
+        endpointCount = write;
+
+        proxies[proxy] = null;
+        freeProxies[freeCount++] = proxy;
+        return true;
+    }
+
+    @Override
+    public void update(PhysicsObject object) {
+        Integer proxy = proxyIndex.get(object);
+        if (proxy == null) {
+            insert(object);
+            return;
+        }
+        copyBounds(proxy, object);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(proxies, 0, proxyCount, null);
+        proxyIndex.clear();
+        pairIndex.clear();
+        proxyCount = 0;
+        freeCount = 0;
+        endpointCount = 0;
+        sortedCount = 0;
+        pairCount = 0;
+        Arrays.fill(stale, false);
+        staleCount = 0;
+        maxWidth = 0;
+    }
+
+    /**
+     * Reordena as extremidades com os limites atuais e atualiza o conjunto de pares.
+     * Deve ser chamado uma vez por passo, depois de update() para os corpos que se moveram.
+     */
+    public void updatePairs() {
+        for (int i = 0; i < endpointCount; i++) {
+            int code = endpointsX[i];
+            valuesX[i] = (code & 1) == 1 ? maxX[code >> 1] : minX[code >> 1];
+            code = endpointsY[i];
+            valuesY[i] = (code & 1) == 1 ? maxY[code >> 1] : minY[code >> 1];
+        }
+        sortAxis(endpointsX, valuesX);
+        sortAxis(endpointsY, valuesY);
+        sortedCount = endpointCount;
+        for (int i = 0; i < staleCount; i++) {
+            stale[staleProxies[i]] = false;
+        }
+        staleCount = 0;
+    }
+
+    // Ordenação por inserção; cada troca entre um mínimo e um máximo pode criar ou desfazer um par
+    private void sortAxis(int[] endpoints, float[] values) {
+        for (int i = 1; i < endpointCount; i++) {
+            int code = endpoints[i];
+            float value = values[i];
+            boolean isMax = (code & 1) == 1;
+            int j = i - 1;
+
+            while (j >= 0 && isBefore(value, isMax, values[j], (endpoints[j] & 1) == 1)) {
+                int other = endpoints[j];
+                boolean otherIsMax = (other & 1) == 1;
+                int a = code >> 1;
+                int b = other >> 1;
+
+                if (a != b) {
+                    if (!isMax && otherIsMax) {
+                        // Um mínimo passou à esquerda de um máximo: pode ter começado uma sobreposição
+                        if (overlaps(a, b)) {
+                            addPair(a, b);
+                        }
+                    } else if (isMax && !otherIsMax) {
+                        // Um máximo passou à esquerda de um mínimo: a sobreposição terminou
+                        removePair(a, b);
+                    }
+                }
+
+                endpoints[j + 1] = other;
+                values[j + 1] = values[j];
+                j--;
+            }
+            endpoints[j + 1] = code;
+            values[j + 1] = value;
+        }
+    }
+
+    // Em caso de empate o máximo vem antes, então caixas que só se tocam não formam par
+    private static boolean isBefore(float value, boolean isMax, float otherValue, boolean otherIsMax) {
+        return value < otherValue || (value == otherValue && isMax && !otherIsMax);
+    }
+
+    private boolean overlaps(int a, int b) {
+        return minX[a] < maxX[b] && maxX[a] > minX[b] &&
+               minY[a] < maxY[b] && maxY[a] > minY[b];
+    }
+
+    private void addPair(int a, int b) {
+        long key = pairKey(a, b);
+        if (pairIndex.get(key, -1) >= 0) {
+            return;
+        }
+        if (pairCount == pairProxyA.length) {
+            pairProxyA = Arrays.copyOf(pairProxyA, pairCount * 2);
+            pairProxyB = Arrays.copyOf(pairProxyB, pairCount * 2);
+        }
+        pairProxyA[pairCount] = Math.min(a, b);
+        pairProxyB[pairCount] = Math.max(a, b);
+        pairIndex.put(key, pairCount);
+        pairCount++;
+    }
+
+    private void removePair(int a, int b) {
+        int index = pairIndex.remove(pairKey(a, b), -1);
+        if (index < 0) {
+            return;
+        }
+        int last = pairCount - 1;
+        if (index != last) {
+            pairProxyA[index] = pairProxyA[last];
+            pairProxyB[index] = pairProxyB[last];
+            pairIndex.put(pairKey(pairProxyA[index], pairProxyB[index]), index);
+        }
+        pairCount--;
+    }
+
+    private static long pairKey(int a, int b) {
+        return ((long)Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
+    private void copyBounds(int proxy, PhysicsObject object) {
+        minX[proxy] = object.getX();
+        minY[proxy] = object.getY();
+        maxX[proxy] = object.getX() + object.getWidth();
+        maxY[proxy] = object.getY() + object.getHeight();
+        maxWidth = Math.max(maxWidth, object.getWidth());
+        if (!stale[proxy]) {
+            stale[proxy] = true;
+            staleProxies[staleCount++] = proxy;
+        }
+    }
+
+    // Número de pares sobrepostos após a última chamada a updatePairs()
+    public int getPairCount() {
+        return pairCount;
+    }
+
+    public PhysicsObject getPairA(int index) {
+        return proxies[pairProxyA[index]];
+    }
+
+    public PhysicsObject getPairB(int index) {
+        return proxies[pairProxyB[index]];
+    }
+
+    // Retorna os objetos que formam par com o objeto dado na última chamada a updatePairs()
+    @Override
+    public List<PhysicsObject> retrieve(List<PhysicsObject> returnObjects, PhysicsObject object) {
+        Integer index = proxyIndex.get(object);
+        if (index == null) {
+            return returnObjects;
+        }
+        int proxy = index;
+        for (int i = 0; i < pairCount; i++) {
+            if (pairProxyA[i] == proxy) {
+                returnObjects.add(proxies[pairProxyB[i]]);
+            } else if (pairProxyB[i] == proxy) {
+                returnObjects.add(proxies[pairProxyA[i]]);
+            }
+        }
+        return returnObjects;
+    }
+
+    /*
+     * Busca binária no eixo X ordenado a partir de minX - maxWidth, o menor mínimo
+     * que ainda alcança a região, e varredura até maxX. Os proxies que mudaram desde
+     * a última ordenação são conferidos à parte, pelos limites atuais.
+     */
+    @Override
+    public List<PhysicsObject> query(List<PhysicsObject> returnObjects, float qMinX, float qMinY, float qMaxX, float qMaxY) {
+        float from = qMinX - maxWidth;
+        int low = 0;
+        int high = sortedCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (valuesX[middle] < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        for (int i = low; i < sortedCount && valuesX[i] <= qMaxX; i++) {
+            int code = endpointsX[i];
+            if ((code & 1) == 1 || stale[code >> 1]) continue;
+            if (touches(code >> 1, qMinX, qMinY, qMaxX, qMaxY)) {
+                returnObjects.add(proxies[code >> 1]);
+            }
+        }
+        for (int i = 0; i < staleCount; i++) {
+            int proxy = staleProxies[i];
+            if (proxies[proxy] != null && touches(proxy, qMinX, qMinY, qMaxX, qMaxY)) {
+                returnObjects.add(proxies[proxy]);
+            }
+        }
+        return returnObjects;
+    }
+
+    private boolean touches(int proxy, float qMinX, float qMinY, float qMaxX, float qMaxY) {
+        return minX[proxy] <= qMaxX && maxX[proxy] >= qMinX &&
+               minY[proxy] <= qMaxY && maxY[proxy] >= qMinY;
+    }
+
+    @Override
+    public int size() {
+        return proxyIndex.size();
+    }
+}
@@ -0,0 +1,76 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Agenda ações para um passo (tick) futuro da simulação, em vez de um instante do
+ * relógio real. Ações do mesmo tick rodam na ordem em que foram agendadas, então
+ * a mesma sequência de entradas sempre produz a mesma sequência de ações.
+ */
+public class TickScheduler {
+
+    private static class Entry {
+        final long tick;
+        final long sequence;
+        final Runnable action;
+
+        Entry(long tick, long sequence, Runnable action) {
+            this.tick = tick;
+            this.sequence = sequence;
+            this.action = action;
+        }
+    }
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(16, new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            if (a.tick != b.tick) {
+                return a.tick < b.tick ? -1 : 1;
+            }
+            return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+        }
+    });
+    private long nextSequence = 0;
+
+    public synchronized void schedule(long tick, Runnable action) {
+        queue.add(new Entry(tick, nextSequence++, action));
+    }
+
+    /**
+     * Executa, em ordem, todas as ações agendadas até o tick informado, inclusive.
+     * As ações rodam fora do bloqueio, então podem agendar novas ações.
+     */
+    public void runDue(long tick) {
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                entry = queue.peek();
+                if (entry == null || entry.tick > tick) {
+                    return;
+                }
+                queue.poll();
+            }
+            entry.action.run();
+        }
+    }
+
+    // Substitui as ações do destino por uma cópia das ações deste agendador
+    public void copyTo(TickScheduler target) {
+        synchronized (this) {
+            synchronized (target) {
+                target.queue.clear();
+                target.queue.addAll(queue);
+                target.nextSequence = nextSequence;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    public synchronized void clear() {
+        queue.clear();
+    }
+}
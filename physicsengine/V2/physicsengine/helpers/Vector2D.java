@@ -13,6 +13,37 @@ public class Vector2D {
         this.y += other.y;
     }
     
+    // Operações que alteram o próprio vetor, sem alocar novos objetos
+    public Vector2D set(float x, float y) {
+        this.x = x;
+        this.y = y;
+        return this;
+    }
+
+    public Vector2D set(Vector2D other) {
+        this.x = other.x;
+        this.y = other.y;
+        return this;
+    }
+
+    public Vector2D subtract(Vector2D other) {
+        this.x -= other.x;
+        this.y -= other.y;
+        return this;
+    }
+
+    public Vector2D scale(float scalar) {
+        this.x *= scalar;
+        this.y *= scalar;
+        return this;
+    }
+
+    public Vector2D addScaled(Vector2D other, float scalar) {
+        this.x += other.x * scalar;
+        this.y += other.y * scalar;
+        return this;
+    }
+    
     public Vector2D add2D(Vector2D other) {
         return new Vector2D(this.x + other.x, this.y + other.y);
     }
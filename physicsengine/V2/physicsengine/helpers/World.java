@@ -0,0 +1,1093 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Núcleo da simulação: os corpos, as estruturas de colisão e o passo completo
+ * (integração, fase ampla, fase estreita, plataformas, contêineres e seguidores).
+ * Não depende do Android, então roda em uma JVM comum, por exemplo para testes de
+ * carga ou para uma simulação autoritativa em um servidor. Os eventos do passo vão
+ * para um WorldEvents e as mensagens de log para um WorldLogger; o PhysicsEngine
+ * é só um adaptador que liga esses dois ao App Inventor e desenha o resultado.
+ */
+public class World {
+    private static final String LOG_NAME = "PhysicsEngine";
+
+    // Corpos em vetores primitivos, indexados por slot e consultados por ID
+    private final BodyStore objects = new BodyStore(64);
+    // Fase ampla persistente; só os corpos que se moveram são reposicionados a cada passo
+    private Broadphase broadphase;
+    private float boundsWidth;
+    private float boundsHeight;
+    private final List<PhysicsObject> candidates = new ArrayList<>();
+    private final List<PhysicsObject> touching = new ArrayList<>(); // Vizinhos consultados para acordar corpos
+    // Pares já testados no passo atual, como chaves long; reutilizado a cada passo
+    private final LongHashSet checkedPairs = new LongHashSet(256);
+    // Plataformas ficam em um índice próprio, ordenado por X, para as consultas de "estar sobre"
+    private final PlatformIndex platformIndex = new PlatformIndex();
+    // Corpos rápidos cujo deslocamento é varrido contra as plataformas a cada passo
+    private static final int MAX_BULLET_SUBSTEPS = 4;
+    private final List<PhysicsObject> bullets = new ArrayList<>();
+    // Corpos em repouso adormecem por ilha de contato e deixam de custar por passo
+    private final IslandManager islands = new IslandManager();
+    private boolean sleepingEnabled = true;
+    private float timeToSleep = 0.5f; // Segundos em repouso antes de adormecer
+    // Resolvedor de contatos por impulsos; desligado, as colisões só disparam eventos como antes
+    private final ContactSolver contactSolver = new ContactSolver();
+    private boolean contactSolverEnabled = false;
+
+    private final Map<Integer, Container> containers = new HashMap<>();
+    // Objetos que estão seguindo outros objetos, pelo ID do seguidor
+    private final Map<Integer, FollowInfo> followingObjects = new HashMap<>();
+    private Vector2D gravity = new Vector2D(0, 9.8f);
+
+    // Contagem de passos da simulação; no modo determinístico as ações temporizadas são agendadas por passo
+    private long tick = 0;
+    private boolean deterministic = false;
+    private final TickScheduler tickScheduler = new TickScheduler();
+
+    // Replay em gravação, se houver
+    private volatile ReplayRecorder recorder;
+    // Pontos dos registros VERTEX que aguardam o SHAPE do polígono durante a reprodução
+    private float[] replayXs = new float[8];
+    private float[] replayYs = new float[8];
+    private int replayVertices = 0;
+
+    // Integração e fase estreita divididas em blocos fixos; abaixo do limite rodam na thread do passo
+    public static final int PARALLEL_CHUNK_SIZE = 128;
+    private ParallelLoop parallelLoop = new ParallelLoop(Runtime.getRuntime().availableProcessors(), PARALLEL_CHUNK_SIZE, 1024);
+    private float stepDeltaTime;
+
+    // Pares da fase ampla do passo atual e, por bloco da fase estreita, um buffer de contatos e um teste de formas
+    private final ContactBuffer broadphasePairs = new ContactBuffer();
+    // Verdadeiro quando os pares vêm do SweepAndPrune, que só entrega caixas já sobrepostas
+    private boolean pairsOverlap;
+    private ContactBuffer[] chunkContacts = new ContactBuffer[0];
+    private ShapeCollision[] chunkShapeTests = new ShapeCollision[0];
+    private final ParallelLoop.Body narrowphaseBody = new ParallelLoop.Body() {
+        @Override
+        public void run(int from, int to) {
+            int chunk = from / parallelLoop.getChunkSize();
+            ContactBuffer contacts = chunkContacts[chunk];
+            ShapeCollision shapeTest = chunkShapeTests[chunk];
+            for (int i = from; i < to; i++) {
+                testPair(broadphasePairs.getFirst(i), broadphasePairs.getSecond(i), contacts, shapeTest);
+            }
+        }
+    };
+    private final ParallelLoop.Body integrationBody = new ParallelLoop.Body() {
+        @Override
+        public void run(int from, int to) {
+            // Cada corpo só escreve no próprio slot, então os blocos são independentes
+            for (int i = from; i < to; i++) {
+                PhysicsObject obj = objects.getAt(i);
+                if (obj.isSleeping()) continue;
+
+                updateObject(obj, stepDeltaTime);
+                if (sleepingEnabled) {
+                    obj.updateSleepTime(stepDeltaTime);
+                }
+            }
+        }
+    };
+
+    private WorldLogger logger = WorldLogger.NONE;
+    private WorldEvents events = WorldEvents.NONE;
+
+    // Tempos por fase; só são medidos com as estatísticas ligadas ou com um ouvinte registrado
+    private final StepStats stepStats = new StepStats();
+    private boolean stepStatsEnabled = false;
+    private StepStats.Listener stepListener;
+    private final long[] phaseNanos = new long[StepStats.PHASES];
+    private boolean timing; // Medição ligada no passo atual
+    private long dispatchNanos; // Tempo em eventos de colisão ainda não descontado da fase em que ocorreram
+
+    /**
+     * Cria um mundo vazio com a quad-tree como fase ampla.
+     *
+     * @param width Largura da área coberta pela quad-tree.
+     * @param height Altura da área coberta pela quad-tree.
+     */
+    public World(float width, float height) {
+        this.boundsWidth = width;
+        this.boundsHeight = height;
+        this.broadphase = new QuadTree(0, new QuadTree.Rect(0, 0, width, height));
+    }
+
+    public BodyStore getBodies() {
+        return objects;
+    }
+
+    public Map<Integer, Container> getContainers() {
+        return containers;
+    }
+
+    public Map<Integer, FollowInfo> getFollowers() {
+        return followingObjects;
+    }
+
+    public WorldLogger getLogger() {
+        return logger;
+    }
+
+    public void setLogger(WorldLogger logger) {
+        this.logger = logger;
+        objects.setLogger(logger);
+    }
+
+    public void setEvents(WorldEvents events) {
+        this.events = events;
+    }
+
+    public StepStats getStepStats() {
+        return stepStats;
+    }
+
+    public boolean isStepStatsEnabled() {
+        return stepStatsEnabled;
+    }
+
+    public void setStepStatsEnabled(boolean enabled) {
+        this.stepStatsEnabled = enabled;
+    }
+
+    // Ouvinte chamado ao fim de cada passo com os tempos das fases; null remove o atual
+    public void setStepListener(StepStats.Listener listener) {
+        this.stepListener = listener;
+    }
+
+    public Vector2D getGravity() {
+        return gravity;
+    }
+
+    public void setGravity(float x, float y) {
+        this.gravity = new Vector2D(x, y);
+    }
+
+    // Área coberta pela quad-tree; ela é refeita no próximo passo se o tamanho mudou
+    public void setBounds(float width, float height) {
+        this.boundsWidth = width;
+        this.boundsHeight = height;
+    }
+
+    public float getBoundsWidth() {
+        return boundsWidth;
+    }
+
+    public float getBoundsHeight() {
+        return boundsHeight;
+    }
+
+    public Broadphase getBroadphase() {
+        return broadphase;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public void setTick(long tick) {
+        this.tick = tick;
+    }
+
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    public void setDeterministic(boolean deterministic) {
+        this.deterministic = deterministic;
+    }
+
+    // Ações agendadas por passo; rodam no início do passo correspondente
+    public TickScheduler getTickScheduler() {
+        return tickScheduler;
+    }
+
+    public ParallelLoop getParallelLoop() {
+        return parallelLoop;
+    }
+
+    // Troca o laço paralelo pelo novo e encerra as threads do anterior
+    public synchronized void setParallelLoop(ParallelLoop replacement) {
+        ParallelLoop previous = parallelLoop;
+        parallelLoop = replacement;
+        previous.shutdown();
+    }
+
+    public boolean isSleepingEnabled() {
+        return sleepingEnabled;
+    }
+
+    public void setSleepingEnabled(boolean enabled) {
+        this.sleepingEnabled = enabled;
+        if (!enabled) {
+            wakeAll();
+        }
+    }
+
+    public void setTimeToSleep(float seconds) {
+        this.timeToSleep = seconds;
+    }
+
+    public ContactSolver getContactSolver() {
+        return contactSolver;
+    }
+
+    public synchronized void setContactSolverEnabled(boolean enabled) {
+        this.contactSolverEnabled = enabled;
+        if (!enabled) {
+            contactSolver.clear();
+        }
+    }
+
+    public ReplayRecorder getRecorder() {
+        return recorder;
+    }
+
+    public void setRecorder(ReplayRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Registra uma alteração no replay em gravação, com o passo que ela antecede.
+     * Chame sob o monitor dos corpos, junto com a alteração: o passo segura esse
+     * monitor do início ao fim, então a alteração e o tick gravado não podem ficar
+     * em lados diferentes de um passo.
+     */
+    public void record(byte type, int id, float... values) {
+        ReplayRecorder active = recorder;
+        if (active != null) {
+            synchronized (this.objects) {
+                active.record(type, tick, id, values);
+            }
+        }
+    }
+
+    /*
+     * CORPOS
+     */
+
+    // Cria o corpo no BodyStore e o registra na fase ampla
+    public PhysicsObject addBody(int id, float x, float y, float width, float height, float mass, float friction) {
+        synchronized (this.objects) {
+            removeBody(id);
+            PhysicsObject obj = objects.add(id, x, y, width, height, mass, friction);
+            broadphase.insert(obj);
+            obj.clearMoved();
+            record(ReplayRecorder.SPAWN, id, x, y, width, height, mass, friction);
+            return obj;
+        }
+    }
+
+    public void removeBody(int id) {
+        synchronized (this.objects) {
+            PhysicsObject existing = objects.get(id);
+            if (existing != null) {
+                // Quem estava apoiado no corpo removido volta a ser simulado
+                IslandManager.wakeTouching(broadphase, touching, existing, 1.0f);
+            }
+            PhysicsObject obj = objects.remove(id);
+            if (obj != null) {
+                broadphase.remove(obj);
+                platformIndex.remove(obj);
+                bullets.remove(obj);
+                record(ReplayRecorder.REMOVE, id);
+            }
+        }
+    }
+
+    public void clearBodies() {
+        synchronized (this.objects) {
+            objects.clear();
+            broadphase.clear();
+            platformIndex.clear();
+            bullets.clear();
+            record(ReplayRecorder.CLEAR, 0);
+        }
+    }
+
+    public void setPlatform(PhysicsObject obj, boolean isPlatform) {
+        synchronized (this.objects) {
+            obj.setAsPlatform(isPlatform);
+            obj.wake();
+            IslandManager.wakeTouching(broadphase, touching, obj, 1.0f);
+            if (isPlatform) {
+                platformIndex.add(obj);
+            } else {
+                platformIndex.remove(obj);
+            }
+            record(ReplayRecorder.PLATFORM, obj.getId(), isPlatform ? 1 : 0);
+        }
+    }
+
+    public void setBullet(PhysicsObject obj, boolean isBullet) {
+        synchronized (this.objects) {
+            obj.setBullet(isBullet);
+            bullets.remove(obj);
+            if (isBullet) {
+                bullets.add(obj);
+            }
+            record(ReplayRecorder.BULLET, obj.getId(), isBullet ? 1 : 0);
+        }
+    }
+
+    /*
+     * CONTÊINERES
+     */
+
+    // Cria um contêiner com o corpo informado como pai; um contêiner anterior do mesmo pai é substituído
+    public void createContainer(int parentId) {
+        synchronized (this.objects) {
+            PhysicsObject parent = objects.get(parentId);
+            if (parent == null) {
+                return;
+            }
+            synchronized (this.containers) {
+                containers.put(parentId, new Container(parent));
+            }
+            record(ReplayRecorder.CONTAINER, parentId, ReplayRecorder.CONTAINER_CREATE, 0, 0);
+        }
+    }
+
+    public void addToContainer(int containerId, int childId) {
+        synchronized (this.objects) {
+            PhysicsObject child = objects.get(childId);
+            Container container;
+            synchronized (this.containers) {
+                container = containers.get(containerId);
+            }
+            if (container == null || child == null) {
+                return;
+            }
+            container.addChild(child);
+            record(ReplayRecorder.CONTAINER, containerId, ReplayRecorder.CONTAINER_ADD,
+                    ReplayRecorder.highBits(childId), ReplayRecorder.lowBits(childId));
+        }
+    }
+
+    // Faz o corpo seguir outro; substitui o líder anterior do mesmo seguidor
+    public void startFollowing(int followerId, int leaderId, float maxFollowDistance, float stopFollowDistance) {
+        synchronized (this.objects) {
+            followingObjects.put(followerId, new FollowInfo(followerId, leaderId, maxFollowDistance, stopFollowDistance));
+            record(ReplayRecorder.FOLLOW, followerId, ReplayRecorder.highBits(leaderId), ReplayRecorder.lowBits(leaderId),
+                    maxFollowDistance, stopFollowDistance);
+        }
+    }
+
+    public void removeFromContainer(int containerId, int childId) {
+        synchronized (this.objects) {
+            PhysicsObject child = objects.get(childId);
+            Container container;
+            synchronized (this.containers) {
+                container = containers.get(containerId);
+            }
+            if (container == null || child == null) {
+                return;
+            }
+            container.removeChild(child);
+            record(ReplayRecorder.CONTAINER, containerId, ReplayRecorder.CONTAINER_REMOVE,
+                    ReplayRecorder.highBits(childId), ReplayRecorder.lowBits(childId));
+        }
+    }
+
+    // Para uso fora do passo; os trabalhadores da integração não podem tomar o monitor dos corpos
+    public void updateOnPlatformState(PhysicsObject obj) {
+        synchronized (this.objects) {
+            obj.setOnPlatform(platformIndex.overlapsAny(obj));
+        }
+    }
+
+    // Acorda o objeto e os que estão encostados nele
+    public void wake(int id) {
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj != null) {
+                obj.wake();
+                IslandManager.wakeTouching(broadphase, touching, obj, 1.0f);
+                record(ReplayRecorder.WAKE, id);
+            }
+        }
+    }
+
+    public void wakeAll() {
+        synchronized (this.objects) {
+            for (int i = 0; i < objects.size(); i++) {
+                objects.getAt(i).wake();
+            }
+        }
+    }
+
+    // Troca a estrutura da fase ampla e insere nela todos os corpos atuais
+    public void setBroadphase(Broadphase replacement) {
+        synchronized (this.objects) {
+            broadphase = replacement;
+            for (int i = 0; i < objects.size(); i++) {
+                broadphase.insert(objects.getAt(i));
+            }
+        }
+    }
+
+    // Refaz a fase ampla, o índice de plataformas e a lista de projéteis na ordem dos slots
+    public void rebuildBodyIndexes() {
+        synchronized (this.objects) {
+            broadphase.clear();
+            platformIndex.clear();
+            bullets.clear();
+            for (int i = 0; i < objects.size(); i++) {
+                PhysicsObject obj = objects.getAt(i);
+                broadphase.insert(obj);
+                obj.clearMoved();
+                if (obj.isPlatform()) {
+                    platformIndex.add(obj);
+                }
+                if (obj.isBullet()) {
+                    bullets.add(obj);
+                }
+            }
+            contactSolver.clear();
+        }
+    }
+
+    /*
+     * PASSO
+     */
+
+    /**
+     * Avança a simulação em um passo: ações agendadas para o passo, integração,
+     * projéteis, contêineres, fase ampla, fase estreita, sono, eventos de posição,
+     * estado sobre plataformas e seguidores.
+     */
+    public synchronized void step(float deltaTime) {
+        if (logger.isDebugEnabled()) logger.debug(LOG_NAME, "Iniciando a atualização do ciclo de física");
+
+        StepStats.Listener listener = stepListener;
+        timing = stepStatsEnabled || listener != null;
+        long stepStart = 0;
+        if (timing) {
+            Arrays.fill(phaseNanos, 0);
+            dispatchNanos = 0;
+            stepStart = System.nanoTime();
+        }
+
+        // O passo inteiro segura o monitor dos corpos: alterações feitas fora dele, e o
+        // tick com que são gravadas no replay, ficam sempre entre dois passos
+        synchronized (this.objects) {
+            tickScheduler.runDue(tick);
+
+            if (deterministic) {
+                objects.sortById();
+            }
+            long mark = timing ? System.nanoTime() : 0;
+            syncQuadTreeBounds();
+            mark = lap(StepStats.BROADPHASE, mark);
+            platformIndex.refresh();
+            mark = lap(StepStats.PLATFORMS, mark);
+
+            for (int i = 0; i < objects.size(); i++) {
+                PhysicsObject obj = objects.getAt(i);
+                if (!obj.isSleeping()) {
+                    obj.savePreviousState();
+                }
+            }
+
+            stepDeltaTime = deltaTime;
+            parallelLoop.run(objects.size(), integrationBody);
+            resolveBullets();
+
+            // Trabalho que toca outros corpos fica fora da etapa paralela
+            updateContainers();
+            mark = lap(StepStats.INTEGRATION, mark);
+
+            // Reposiciona na fase ampla apenas os corpos que se moveram
+            for (int i = 0; i < objects.size(); i++) {
+                PhysicsObject obj = objects.getAt(i);
+                if (obj.hasMoved()) {
+                    broadphase.update(obj);
+                    obj.clearMoved();
+                    if (sleepingEnabled && obj.isPlatform()) {
+                        // Quem dormia apoiado na plataforma precisa reagir ao movimento dela
+                        IslandManager.wakeTouching(broadphase, touching, obj, 1.0f);
+                    }
+                }
+            }
+            lap(StepStats.BROADPHASE, mark);
+
+            narrowphase();
+
+            mark = timing ? System.nanoTime() : 0;
+            if (sleepingEnabled) {
+                islands.updateSleep(objects, timeToSleep);
+            }
+            mark = lap(StepStats.NARROWPHASE, mark);
+
+            // Eventos de posição depois das correções de colisão
+            for (int i = 0; i < objects.size(); i++) {
+                PhysicsObject obj = objects.getAt(i);
+                if (!obj.isSleeping()) {
+                    events.onPositionChanged(obj.getId(), obj.getX(), obj.getY());
+                }
+            }
+            lap(StepStats.EVENTS, mark);
+
+            mark = timing ? System.nanoTime() : 0;
+            // Plataformas que se moveram neste passo entram no índice antes da consulta
+            platformIndex.refresh();
+            for (int i = 0; i < objects.size(); i++) {
+                PhysicsObject obj = objects.getAt(i);
+                if (obj.isSleeping()) continue;
+                obj.setOnPlatform(platformIndex.hasPlatformBelow(obj));
+            }
+            lap(StepStats.PLATFORMS, mark);
+
+            mark = timing ? System.nanoTime() : 0;
+            updateFollowing();
+            lap(StepStats.FOLLOWING, mark);
+
+            ReplayRecorder activeRecorder = recorder;
+            if (activeRecorder != null) {
+                activeRecorder.recordHash(tick, objects.stateHash(), deltaTime);
+            }
+
+            if (timing) {
+                phaseNanos[StepStats.TOTAL] = System.nanoTime() - stepStart;
+                if (stepStatsEnabled) {
+                    stepStats.addStep(phaseNanos);
+                }
+                if (listener != null) {
+                    listener.onStep(tick, phaseNanos);
+                }
+            }
+            tick++;
+        }
+
+        if (logger.isDebugEnabled()) logger.debug(LOG_NAME, "Finalizando a atualização do ciclo de física");
+    }
+
+    /*
+     * Fase estreita em três etapas: os pares da fase ampla são coletados, testados
+     * em paralelo por blocos (cada bloco escreve no próprio buffer de contatos) e
+     * só então respondidos em sequência, percorrendo os buffers na ordem dos blocos.
+     * Assim a ordem das respostas e dos eventos não depende do número de threads.
+     */
+    private void narrowphase() {
+        long mark = timing ? System.nanoTime() : 0;
+        islands.reset(objects.size());
+        collectBroadphasePairs();
+        mark = lap(StepStats.BROADPHASE, mark);
+
+        int pairCount = broadphasePairs.size();
+        int chunkCount = (pairCount + parallelLoop.getChunkSize() - 1) / parallelLoop.getChunkSize();
+        if (chunkContacts.length < chunkCount) {
+            ContactBuffer[] grown = Arrays.copyOf(chunkContacts, Math.max(chunkCount, chunkContacts.length * 2));
+            ShapeCollision[] grownTests = Arrays.copyOf(chunkShapeTests, grown.length);
+            for (int i = chunkContacts.length; i < grown.length; i++) {
+                grown[i] = new ContactBuffer();
+                grownTests[i] = new ShapeCollision();
+            }
+            chunkContacts = grown;
+            chunkShapeTests = grownTests;
+        }
+        for (int i = 0; i < chunkCount; i++) {
+            chunkContacts[i].clear();
+        }
+
+        parallelLoop.run(pairCount, narrowphaseBody);
+
+        for (int c = 0; c < chunkCount; c++) {
+            ContactBuffer contacts = chunkContacts[c];
+            for (int i = 0; i < contacts.size(); i++) {
+                respondToContact(contacts.getFirst(i), contacts.getSecond(i), contacts.getSide(i),
+                        contacts.getNormalX(i), contacts.getNormalY(i), contacts.getDepth(i));
+            }
+        }
+
+        if (contactSolverEnabled) {
+            contactSolver.solve();
+        }
+        lap(StepStats.NARROWPHASE, mark);
+    }
+
+    /**
+     * Refaz o deslocamento deste passo dos corpos marcados como projéteis, da posição
+     * anterior até a atual, parando no primeiro contato com uma plataforma. O restante
+     * do movimento continua na tangente do contato, em até MAX_BULLET_SUBSTEPS trechos,
+     * então um corpo rápido não atravessa plataformas finas.
+     */
+    private void resolveBullets() {
+        for (int b = 0; b < bullets.size(); b++) {
+            PhysicsObject obj = bullets.get(b);
+            if (obj.isSleeping()) continue;
+
+            float x = obj.getInterpolatedX(0);
+            float y = obj.getInterpolatedY(0);
+            float dx = obj.getX() - x;
+            float dy = obj.getY() - y;
+
+            for (int step = 0; step < MAX_BULLET_SUBSTEPS && (dx != 0 || dy != 0); step++) {
+                float t = platformIndex.sweep(obj, x, y, dx, dy);
+                if (t >= 1) {
+                    break;
+                }
+
+                // Avança até o contato e descarta a componente que entraria na plataforma
+                x += dx * t;
+                y += dy * t;
+                dx *= 1 - t;
+                dy *= 1 - t;
+                PhysicsObject platform = platformIndex.getSweepHit();
+                String side;
+                if (platformIndex.getSweepNormalX() != 0) {
+                    dx = 0;
+                    obj.setVelocity(0, obj.getVelocityY());
+                    side = platformIndex.getSweepNormalX() < 0 ? "right" : "left";
+                } else {
+                    dy = 0;
+                    obj.setVelocity(obj.getVelocityX(), 0);
+                    side = platformIndex.getSweepNormalY() < 0 ? "bottom" : "top";
+                    if (side.equals("bottom")) {
+                        obj.setOnPlatform(true);
+                    }
+                }
+                handleCollision(obj, platform, side);
+            }
+
+            obj.setPosition(x + dx, y + dy);
+        }
+    }
+
+    // Reúne em broadphasePairs os pares distintos da fase ampla, exceto os de dois corpos adormecidos
+    private void collectBroadphasePairs() {
+        broadphasePairs.clear();
+        pairsOverlap = broadphase instanceof SweepAndPrune;
+
+        if (pairsOverlap) {
+            // Os pares sobrepostos já vêm prontos da ordenação incremental
+            SweepAndPrune sap = (SweepAndPrune) broadphase;
+            sap.updatePairs();
+            for (int i = 0; i < sap.getPairCount(); i++) {
+                PhysicsObject obj1 = sap.getPairA(i);
+                PhysicsObject obj2 = sap.getPairB(i);
+                if (obj1.isSleeping() && obj2.isSleeping()) continue;
+
+                broadphasePairs.add(obj1, obj2, null);
+            }
+            return;
+        }
+
+        checkedPairs.clear();
+        for (int i = 0; i < objects.size(); i++) {
+            PhysicsObject obj1 = objects.getAt(i);
+            // Pares entre um corpo adormecido e um acordado são encontrados a partir do acordado
+            if (obj1.isSleeping()) continue;
+
+            int id1 = objects.getId(i);
+            candidates.clear();
+            broadphase.retrieve(candidates, obj1);
+
+            for (int j = 0; j < candidates.size(); j++) {
+                PhysicsObject obj2 = candidates.get(j);
+                if (obj1 == obj2) continue;
+
+                if (!checkedPairs.add(LongHashSet.pairKey(id1, obj2.getId()))) continue;
+
+                broadphasePairs.add(obj1, obj2, null);
+            }
+        }
+    }
+
+    /*
+     * Testa um par e, se houver contato, o grava no buffer. Só lê o estado dos corpos,
+     * então pode rodar em paralelo. Em pares com plataforma, o primeiro objeto gravado
+     * é o que está sobre ela e o lado é calculado do ponto de vista dele.
+     */
+    private void testPair(PhysicsObject obj1, PhysicsObject obj2, ContactBuffer contacts, ShapeCollision shapeTest) {
+        // Caixas que não se sobrepõem descartam o par antes de qualquer teste de forma;
+        // os pares do SweepAndPrune já passaram por esse teste em updatePairs()
+        if (!pairsOverlap && !obj1.collidesWith(obj2)) {
+            return;
+        }
+        if (obj1.isPlatform() && !obj2.isPlatform()) {
+            PhysicsObject swap = obj1;
+            obj1 = obj2;
+            obj2 = swap;
+        }
+        if (!shapeTest.test(obj1, obj2)) {
+            return;
+        }
+
+        String side;
+        if (obj1.getShape() == null && obj2.getShape() == null) {
+            side = obj1.getCollisionSide(obj2);
+        } else {
+            side = sideFromNormal(shapeTest.getNormalX(), shapeTest.getNormalY());
+        }
+        contacts.add(obj1, obj2, side, shapeTest.getNormalX(), shapeTest.getNormalY(), shapeTest.getDepth());
+    }
+
+    // Lado do primeiro objeto que tocou o segundo, a partir da normal entre eles
+    private static String sideFromNormal(float nx, float ny) {
+        if (Math.abs(ny) >= Math.abs(nx)) {
+            return ny > 0 ? "bottom" : "top";
+        }
+        return nx > 0 ? "right" : "left";
+    }
+
+    private void respondToContact(PhysicsObject obj1, PhysicsObject obj2, String collisionSide, float nx, float ny, float depth) {
+        if (contactSolverEnabled) {
+            if (!obj1.isPlatform() && obj2.isPlatform() && collisionSide.equals("bottom")) {
+                obj1.setOnPlatform(true);
+            }
+            // O evento só é disparado quando o contato começa, não a cada passo em que continua
+            if (contactSolver.addContact(obj1, obj2, nx, ny, depth)) {
+                handleCollision(obj1, obj2, collisionSide);
+            }
+        } else if (!obj1.isPlatform() && obj2.isPlatform()) {
+            handlePlatformCollision(obj1, obj2, collisionSide);
+        } else {
+            handleCollision(obj1, obj2, collisionSide);
+        }
+        islands.connect(obj1, obj2);
+    }
+
+    private void handlePlatformCollision(PhysicsObject obj, PhysicsObject platform, String collisionSide) {
+        if (platform.isPlatform() && collisionSide.equals("bottom")) {
+            obj.setOnPlatform(true);
+
+            // Parar a velocidade vertical do objeto para evitar movimento contínuo para baixo
+            obj.setVelocity(obj.getVelocityX(), 0);
+
+            // Ajustar a posição y do objeto para ficar exatamente em cima da plataforma
+            float correctedY = platform.getY() - platform.getHeight();
+            obj.setPosition(obj.getX(), correctedY);
+
+            dispatchCollision(obj.getId(), platform.getId(), collisionSide);
+        } else {
+            obj.setOnPlatform(false);
+        }
+    }
+
+    private void handleCollision(PhysicsObject obj1, PhysicsObject obj2, String collisionSide) {
+        dispatchCollision(obj1.getId(), obj2.getId(), collisionSide);
+    }
+
+    // Os eventos de colisão acontecem no meio de outras fases; o tempo deles conta como EVENTS
+    private void dispatchCollision(int id1, int id2, String collisionSide) {
+        if (!timing) {
+            events.onCollision(id1, id2, collisionSide);
+            return;
+        }
+        long start = System.nanoTime();
+        events.onCollision(id1, id2, collisionSide);
+        long elapsed = System.nanoTime() - start;
+        phaseNanos[StepStats.EVENTS] += elapsed;
+        dispatchNanos += elapsed;
+    }
+
+    // Soma à fase o tempo desde a marca, sem os eventos de colisão disparados nele, e retorna a nova marca
+    private long lap(int phase, long since) {
+        if (!timing) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        phaseNanos[phase] += now - since - dispatchNanos;
+        dispatchNanos = 0;
+        return now;
+    }
+
+    // Integra um único corpo; pode rodar em paralelo, então só altera o próprio corpo
+    private void updateObject(PhysicsObject obj, float deltaTime) {
+        // Atualiza o estado onPlatform do objeto; o passo já tem o monitor dos corpos
+        obj.setOnPlatform(platformIndex.overlapsAny(obj));
+
+        // Aplica a gravidade se o objeto não estiver sobre uma plataforma
+        if (!obj.isOnPlatform()) {
+            obj.applyForce(this.gravity);
+        } else {
+            obj.applyForce(0f, 0f);
+        }
+
+        // Atualiza o objeto; as colisões são tratadas depois, em narrowphase()
+        obj.update(deltaTime);
+    }
+
+    // Move os filhos dos contêineres cujo pai se moveu neste passo
+    private void updateContainers() {
+        synchronized (this.containers) {
+            for (Container container : containers.values()) {
+                if (container.getParent().hasMoved()) {
+                    container.updateChildrenPositions();
+                }
+            }
+        }
+    }
+
+    public void updateFollowing() {
+        synchronized (this.objects) {
+            for (FollowInfo followInfo : followingObjects.values()) {
+                PhysicsObject follower = objects.get(followInfo.getFollowerId());
+                PhysicsObject leader = objects.get(followInfo.getLeaderId());
+
+                if (follower == null || leader == null) {
+                    continue;
+                }
+
+                float dx = leader.getX() - follower.getX();
+                float dy = leader.getY() - follower.getY();
+                float distance = (float)Math.sqrt(dx * dx + dy * dy);
+
+                if (distance <= followInfo.getMaxFollowDistance() && distance > followInfo.getStopFollowDistance()) {
+                    // Certifique-se de que getSpeed() está definido em PhysicsObject
+                    float speed = follower.getSpeed();
+
+                    float scale = distance > 0 ? speed / distance : 0;
+                    follower.setVelocity(dx * scale, dy * scale);
+                } else if (distance > followInfo.getMaxFollowDistance()) {
+                    follower.setVelocity(0, 0);
+                }
+            }
+        }
+    }
+
+    // Recria a quad-tree se o tamanho da área mudou desde a última construção
+    private void syncQuadTreeBounds() {
+        if (!(broadphase instanceof QuadTree)) {
+            return;
+        }
+        QuadTree.Rect bounds = ((QuadTree) broadphase).getBounds();
+        if (bounds.width != boundsWidth || bounds.height != boundsHeight) {
+            setBroadphase(new QuadTree(0, new QuadTree.Rect(0, 0, boundsWidth, boundsHeight)));
+        }
+    }
+
+    /*
+     * SNAPSHOTS
+     */
+
+    /**
+     * Captura o estado do mundo no snapshot informado, reaproveitando os vetores dele.
+     */
+    public synchronized void capture(WorldSnapshot snapshot) {
+        synchronized (this.objects) {
+            objects.capture(snapshot);
+        }
+        snapshot.setTick(tick);
+        tickScheduler.copyTo(snapshot.getScheduled());
+
+        snapshot.clearContainers();
+        synchronized (this.objects) {
+            synchronized (this.containers) {
+                for (Container container : containers.values()) {
+                    snapshot.addContainer(container.getParent().getId());
+                    for (int i = 0; i < container.getChildCount(); i++) {
+                        snapshot.addContainerChild(container.getChild(i).getId());
+                    }
+                }
+            }
+        }
+
+        snapshot.getFollowers().clear();
+        snapshot.getFollowers().addAll(followingObjects.values());
+    }
+
+    /**
+     * Volta o mundo ao estado do snapshot. Objetos criados depois da captura são
+     * removidos e objetos removidos são recriados; os que continuam existindo
+     * mantêm as mesmas instâncias.
+     */
+    public synchronized void restore(WorldSnapshot snapshot) {
+        synchronized (this.objects) {
+            // Ajusta o conjunto de corpos só quando ele difere do capturado
+            boolean sameBodies = objects.size() == snapshot.getBodyCount();
+            for (int i = 0; sameBodies && i < snapshot.getBodyCount(); i++) {
+                sameBodies = objects.get(snapshot.getId(i)) != null;
+            }
+            if (!sameBodies) {
+                Set<Integer> captured = new HashSet<>();
+                for (int i = 0; i < snapshot.getBodyCount(); i++) {
+                    captured.add(snapshot.getId(i));
+                }
+                for (int i = objects.size() - 1; i >= 0; i--) {
+                    if (!captured.contains(objects.getId(i))) {
+                        removeBody(objects.getId(i));
+                    }
+                }
+                for (int i = 0; i < snapshot.getBodyCount(); i++) {
+                    if (objects.get(snapshot.getId(i)) == null) {
+                        addBody(snapshot.getId(i), 0, 0, 0, 0, 1, 0);
+                    }
+                }
+            }
+
+            // Os contêineres vêm antes do estado dos corpos, que inclui os offsets dos filhos
+            synchronized (this.containers) {
+                for (Container container : containers.values()) {
+                    for (int i = 0; i < container.getChildCount(); i++) {
+                        container.getChild(i).setContainer(null);
+                    }
+                }
+                containers.clear();
+                for (int c = 0; c < snapshot.getContainerCount(); c++) {
+                    PhysicsObject parent = objects.get(snapshot.getContainerParent(c));
+                    if (parent == null) continue; // Contêiner cujo pai já tinha sido removido
+                    Container container = new Container(parent);
+                    for (int i = 0; i < snapshot.getContainerChildCount(c); i++) {
+                        PhysicsObject child = objects.get(snapshot.getContainerChild(c, i));
+                        if (child != null) {
+                            container.addChild(child);
+                        }
+                    }
+                    containers.put(snapshot.getContainerParent(c), container);
+                }
+            }
+
+            objects.restore(snapshot);
+
+            // Estruturas derivadas do estado dos corpos
+            platformIndex.clear();
+            bullets.clear();
+            for (int i = 0; i < objects.size(); i++) {
+                PhysicsObject obj = objects.getAt(i);
+                if (obj.isPlatform()) {
+                    platformIndex.add(obj);
+                }
+                if (obj.isBullet()) {
+                    bullets.add(obj);
+                }
+                broadphase.update(obj);
+                obj.clearMoved();
+            }
+            contactSolver.clear();
+        }
+
+        followingObjects.clear();
+        for (FollowInfo follower : snapshot.getFollowers()) {
+            followingObjects.put(follower.getFollowerId(), follower);
+        }
+        tick = snapshot.getTick();
+        snapshot.getScheduled().copyTo(tickScheduler);
+    }
+
+    /*
+     * REPLAY
+     */
+
+    // Aplica o registro atual do replay, que deve ser uma alteração (não um HASH)
+    public void apply(ReplayPlayer player) {
+        int id = player.getId();
+        switch (player.getType()) {
+            case ReplayRecorder.SPAWN:
+                addBody(id, player.getValue(0), player.getValue(1), player.getValue(2), player.getValue(3),
+                        player.getValue(4), player.getValue(5));
+                return;
+            case ReplayRecorder.REMOVE:
+                removeBody(id);
+                return;
+            case ReplayRecorder.CLEAR:
+                clearBodies();
+                return;
+            case ReplayRecorder.GRAVITY:
+                setGravity(player.getValue(0), player.getValue(1));
+                if (player.getValue(2) != 0) {
+                    wakeAll();
+                }
+                return;
+            case ReplayRecorder.WAKE:
+                wake(id);
+                return;
+            case ReplayRecorder.CONTAINER:
+                int operation = (int) player.getValue(0);
+                int childId = ReplayRecorder.join(player.getValue(1), player.getValue(2));
+                if (operation == ReplayRecorder.CONTAINER_CREATE) {
+                    createContainer(id);
+                } else if (operation == ReplayRecorder.CONTAINER_ADD) {
+                    addToContainer(id, childId);
+                } else if (operation == ReplayRecorder.CONTAINER_REMOVE) {
+                    removeFromContainer(id, childId);
+                }
+                return;
+            case ReplayRecorder.FOLLOW:
+                startFollowing(id, ReplayRecorder.join(player.getValue(0), player.getValue(1)),
+                        player.getValue(2), player.getValue(3));
+                return;
+            case ReplayRecorder.VERTEX:
+                if (replayVertices == replayXs.length) {
+                    replayXs = Arrays.copyOf(replayXs, replayVertices * 2);
+                    replayYs = Arrays.copyOf(replayYs, replayVertices * 2);
+                }
+                replayXs[replayVertices] = player.getValue(0);
+                replayYs[replayVertices] = player.getValue(1);
+                replayVertices++;
+                return;
+            default:
+                break;
+        }
+
+        synchronized (this.objects) {
+            PhysicsObject obj = objects.get(id);
+            if (obj == null) {
+                replayVertices = 0;
+                return;
+            }
+            switch (player.getType()) {
+                case ReplayRecorder.FORCE:
+                    obj.applyForce(new Vector2D(player.getValue(0), player.getValue(1)));
+                    break;
+                case ReplayRecorder.VELOCITY:
+                    obj.setVelocity(new Vector2D(player.getValue(0), player.getValue(1)));
+                    break;
+                case ReplayRecorder.POSITION:
+                    obj.setPosition(new Vector2D(player.getValue(0), player.getValue(1)));
+                    obj.savePreviousState();
+                    break;
+                case ReplayRecorder.BODY:
+                    obj.setSize(new Vector2D(player.getValue(0), player.getValue(1)));
+                    obj.setMass(player.getValue(2));
+                    obj.setFriction(player.getValue(3));
+                    break;
+                case ReplayRecorder.PLATFORM:
+                    setPlatform(obj, player.getValue(0) != 0);
+                    break;
+                case ReplayRecorder.BULLET:
+                    setBullet(obj, player.getValue(0) != 0);
+                    break;
+                case ReplayRecorder.SHAPE:
+                    int shapeType = (int) player.getValue(0);
+                    if (shapeType == ReplayRecorder.SHAPE_CIRCLE) {
+                        obj.setShape(Shape.circle());
+                    } else if (shapeType == ReplayRecorder.SHAPE_POLYGON) {
+                        // Mesmos pontos e deslocamento do bloco original, então o polígono é idêntico
+                        Shape polygon = Shape.polygon(Arrays.copyOf(replayXs, replayVertices), Arrays.copyOf(replayYs, replayVertices));
+                        if (polygon != null) {
+                            obj.setShape(polygon.translate(player.getValue(1), player.getValue(2)));
+                        }
+                    } else {
+                        obj.setShape(null);
+                    }
+                    replayVertices = 0;
+                    break;
+                case ReplayRecorder.ANGULAR:
+                    if (player.getValue(0) == 0) {
+                        obj.setAngularVelocity(player.getValue(1));
+                    } else {
+                        obj.applyTorque(player.getValue(1));
+                    }
+                    break;
+                case ReplayRecorder.OSCILLATE:
+                    if (player.getValue(0) == 0) {
+                        obj.startOscillatingHorizontally(player.getValue(1), (long) player.getValue(2));
+                    } else {
+                        obj.startOscillatingVertically(player.getValue(1), (long) player.getValue(2));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+/**
+ * Recebe os eventos gerados pelo passo da simulação. Os métodos são chamados na
+ * thread do passo, com o mundo bloqueado, então a implementação deve apenas
+ * repassar o evento (por exemplo, postando-o no thread principal) e não alterar
+ * o mundo diretamente.
+ */
+public interface WorldEvents {
+
+    // Ignora todos os eventos
+    WorldEvents NONE = new WorldEvents() {
+        @Override
+        public void onCollision(int objectId1, int objectId2, String collisionSide) {
+        }
+
+        @Override
+        public void onPositionChanged(int objectId, float x, float y) {
+        }
+    };
+
+    /**
+     * Dois objetos colidiram.
+     *
+     * @param collisionSide Lado do primeiro objeto que tocou o segundo: "bottom", "top", "left" ou "right".
+     */
+    void onCollision(int objectId1, int objectId2, String collisionSide);
+
+    // Um objeto acordado terminou o passo na posição informada
+    void onPositionChanged(int objectId, float x, float y);
+}
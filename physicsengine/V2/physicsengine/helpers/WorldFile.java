@@ -0,0 +1,427 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Formato binário versionado para salvar e carregar um mundo inteiro: corpos,
+ * camadas, sprites, contêineres e seguidores.
+ *
+ * Os corpos ficam em blocos contínuos por campo (todos os IDs, depois todos os X,
+ * e assim por diante), no mesmo formato do BodyStore. Na leitura o arquivo é
+ * mapeado na memória e cada bloco é copiado de uma vez para o vetor
+ * correspondente, sem criar um objeto por campo nem repetir AddObject. O arquivo
+ * inteiro é lido e validado em um armazenamento separado antes de tocar no mundo
+ * em execução, então um arquivo inválido não apaga nada.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * int magic, int version, float gravityX, float gravityY
+ * int n, int[n] ids, float[n] x, y, velocityX, velocityY, width, height, mass, friction, byte[n] flags
+ * int shapes, { int slot, byte type, int vertices, float[vertices] xs, float[vertices] ys }
+ * int layers, { string name, int zIndex, float parallax }
+ * int sprites, { int objectId, string layer, string image, string origin, float originX, float originY,
+ *                float scale, float rotation, byte visible }
+ * int containers, { int parentId, int children, int[children] childIds }
+ * int followers, { int followerId, int leaderId, float maxDistance, float stopDistance }
+ * </pre>
+ * Strings são gravadas como int (tamanho em bytes) seguido de UTF-8; -1 representa null.
+ */
+public class WorldFile {
+    public static final int MAGIC = 0x50455731; // "PEW1"
+    public static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte FLAG_PLATFORM = 1;
+    private static final byte FLAG_BULLET = 2;
+    private static final byte SHAPE_CIRCLE = 1;
+    private static final byte SHAPE_POLYGON = 2;
+
+    public static class LayerRecord {
+        public final String name;
+        public final int zIndex;
+        public final float parallax;
+
+        public LayerRecord(String name, int zIndex, float parallax) {
+            this.name = name;
+            this.zIndex = zIndex;
+            this.parallax = parallax;
+        }
+    }
+
+    public static class SpriteRecord {
+        public final int objectId;
+        public final String layerName;
+        public final String imagePath;
+        public final String originPoint;
+        public final float originX;
+        public final float originY;
+        public final float scale;
+        public final float rotation;
+        public final boolean visible;
+
+        public SpriteRecord(int objectId, String layerName, String imagePath, String originPoint,
+                            float originX, float originY, float scale, float rotation, boolean visible) {
+            this.objectId = objectId;
+            this.layerName = layerName;
+            this.imagePath = imagePath;
+            this.originPoint = originPoint;
+            this.originX = originX;
+            this.originY = originY;
+            this.scale = scale;
+            this.rotation = rotation;
+            this.visible = visible;
+        }
+    }
+
+    private float gravityX;
+    private float gravityY;
+    private final List<LayerRecord> layers = new ArrayList<>();
+    private final List<SpriteRecord> sprites = new ArrayList<>();
+    private final List<int[]> containers = new ArrayList<>(); // { parentId, childId... }
+    private BodyStore bodies; // Corpos lidos do arquivo; null em um mundo montado para escrita
+    private final List<FollowInfo> followers = new ArrayList<>();
+
+    public float getGravityX() {
+        return gravityX;
+    }
+
+    public float getGravityY() {
+        return gravityY;
+    }
+
+    public void setGravity(float x, float y) {
+        this.gravityX = x;
+        this.gravityY = y;
+    }
+
+    public List<LayerRecord> getLayers() {
+        return layers;
+    }
+
+    public List<SpriteRecord> getSprites() {
+        return sprites;
+    }
+
+    public List<int[]> getContainers() {
+        return containers;
+    }
+
+    public List<FollowInfo> getFollowers() {
+        return followers;
+    }
+
+    /**
+     * Grava os corpos do armazenamento e os demais dados deste objeto no arquivo.
+     */
+    public void write(File file, BodyStore store) throws IOException {
+        synchronized (store) {
+            int n = store.size();
+            ByteBuffer buffer = ByteBuffer.allocate(measure(store));
+            buffer.putInt(MAGIC).putInt(VERSION).putFloat(gravityX).putFloat(gravityY);
+
+            buffer.putInt(n);
+            buffer.asIntBuffer().put(store.ids, 0, n);
+            buffer.position(buffer.position() + n * 4);
+            putFloats(buffer, store.posX, n);
+            putFloats(buffer, store.posY, n);
+            putFloats(buffer, store.velX, n);
+            putFloats(buffer, store.velY, n);
+            putFloats(buffer, store.width, n);
+            putFloats(buffer, store.height, n);
+            putFloats(buffer, store.mass, n);
+            putFloats(buffer, store.friction, n);
+            for (int i = 0; i < n; i++) {
+                PhysicsObject obj = store.getAt(i);
+                buffer.put((byte)((obj.isPlatform() ? FLAG_PLATFORM : 0) | (obj.isBullet() ? FLAG_BULLET : 0)));
+            }
+
+            buffer.putInt(countShapes(store));
+            for (int i = 0; i < n; i++) {
+                Shape shape = store.getAt(i).getShape();
+                if (shape == null) continue;
+                buffer.putInt(i);
+                buffer.put(shape.getType() == Shape.Type.CIRCLE ? SHAPE_CIRCLE : SHAPE_POLYGON);
+                buffer.putInt(shape.getVertexCount());
+                for (int v = 0; v < shape.getVertexCount(); v++) {
+                    buffer.putFloat(shape.getVertexX(v));
+                }
+                for (int v = 0; v < shape.getVertexCount(); v++) {
+                    buffer.putFloat(shape.getVertexY(v));
+                }
+            }
+
+            buffer.putInt(layers.size());
+            for (LayerRecord layer : layers) {
+                putString(buffer, layer.name);
+                buffer.putInt(layer.zIndex).putFloat(layer.parallax);
+            }
+
+            buffer.putInt(sprites.size());
+            for (SpriteRecord sprite : sprites) {
+                buffer.putInt(sprite.objectId);
+                putString(buffer, sprite.layerName);
+                putString(buffer, sprite.imagePath);
+                putString(buffer, sprite.originPoint);
+                buffer.putFloat(sprite.originX).putFloat(sprite.originY);
+                buffer.putFloat(sprite.scale).putFloat(sprite.rotation);
+                buffer.put((byte)(sprite.visible ? 1 : 0));
+            }
+
+            buffer.putInt(containers.size());
+            for (int[] container : containers) {
+                buffer.putInt(container[0]).putInt(container.length - 1);
+                for (int i = 1; i < container.length; i++) {
+                    buffer.putInt(container[i]);
+                }
+            }
+
+            buffer.putInt(followers.size());
+            for (FollowInfo follower : followers) {
+                buffer.putInt(follower.getFollowerId()).putInt(follower.getLeaderId());
+                buffer.putFloat(follower.getMaxFollowDistance()).putFloat(follower.getStopFollowDistance());
+            }
+
+            buffer.flip();
+            RandomAccessFile output = new RandomAccessFile(file, "rw");
+            try {
+                FileChannel channel = output.getChannel();
+                channel.truncate(0);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * Lê um arquivo de mundo. Os corpos ficam em um armazenamento próprio do objeto
+     * retornado até loadBodies; nada do mundo em execução é alterado aqui.
+     *
+     * @throws IOException Se o arquivo não existir, não for um mundo ou estiver truncado.
+     */
+    public static WorldFile read(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        } finally {
+            input.close();
+        }
+    }
+
+    static WorldFile read(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a world file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported world file version: " + version);
+            }
+
+            WorldFile world = new WorldFile();
+            world.setGravity(buffer.getFloat(), buffer.getFloat());
+
+            int n = buffer.getInt();
+            if (n < 0 || (long) n * 37 > buffer.remaining()) {
+                throw new IOException("Invalid body count: " + n);
+            }
+            BodyStore store = new BodyStore(n);
+            world.bodies = store;
+            synchronized (store) {
+                store.beginBulkLoad(n);
+                buffer.asIntBuffer().get(store.ids, 0, n);
+                buffer.position(buffer.position() + n * 4);
+                getFloats(buffer, store.posX, n);
+                getFloats(buffer, store.posY, n);
+                getFloats(buffer, store.velX, n);
+                getFloats(buffer, store.velY, n);
+                getFloats(buffer, store.width, n);
+                getFloats(buffer, store.height, n);
+                getFloats(buffer, store.mass, n);
+                getFloats(buffer, store.friction, n);
+                try {
+                    store.endBulkLoad(n);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e.getMessage());
+                }
+
+                for (int i = 0; i < n; i++) {
+                    byte flags = buffer.get();
+                    if ((flags & FLAG_PLATFORM) != 0) store.getAt(i).setAsPlatform(true);
+                    if ((flags & FLAG_BULLET) != 0) store.getAt(i).setBullet(true);
+                }
+
+                int shapeCount = buffer.getInt();
+                for (int s = 0; s < shapeCount; s++) {
+                    int slot = buffer.getInt();
+                    byte type = buffer.get();
+                    int vertices = buffer.getInt();
+                    if (vertices < 0 || vertices > buffer.remaining() / 8) {
+                        throw new IOException("Invalid vertex count: " + vertices);
+                    }
+                    float[] xs = new float[vertices];
+                    float[] ys = new float[vertices];
+                    for (int v = 0; v < vertices; v++) {
+                        xs[v] = buffer.getFloat();
+                    }
+                    for (int v = 0; v < vertices; v++) {
+                        ys[v] = buffer.getFloat();
+                    }
+                    if (slot < 0 || slot >= n) {
+                        throw new IOException("Invalid shape slot: " + slot);
+                    }
+                    store.getAt(slot).setShape(type == SHAPE_CIRCLE ? Shape.circle() : Shape.polygon(xs, ys));
+                }
+            }
+
+            int layerCount = buffer.getInt();
+            for (int i = 0; i < layerCount; i++) {
+                world.layers.add(new LayerRecord(getString(buffer), buffer.getInt(), buffer.getFloat()));
+            }
+
+            int spriteCount = buffer.getInt();
+            for (int i = 0; i < spriteCount; i++) {
+                world.sprites.add(new SpriteRecord(buffer.getInt(), getString(buffer), getString(buffer), getString(buffer),
+                        buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.get() != 0));
+            }
+
+            int containerCount = buffer.getInt();
+            for (int i = 0; i < containerCount; i++) {
+                int parentId = buffer.getInt();
+                int children = buffer.getInt();
+                if (children < 0 || children > buffer.remaining() / 4) {
+                    throw new IOException("Invalid container size: " + children);
+                }
+                int[] container = new int[children + 1];
+                container[0] = parentId;
+                for (int c = 1; c <= children; c++) {
+                    container[c] = buffer.getInt();
+                }
+                world.containers.add(container);
+            }
+
+            int followerCount = buffer.getInt();
+            for (int i = 0; i < followerCount; i++) {
+                world.followers.add(new FollowInfo(buffer.getInt(), buffer.getInt(), buffer.getFloat(), buffer.getFloat()));
+            }
+            return world;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated world file");
+        }
+    }
+
+    /**
+     * Substitui os corpos do armazenamento pelos corpos lidos do arquivo. Chame só
+     * depois de um read bem-sucedido; as estruturas derivadas (fase ampla, índices)
+     * devem ser refeitas em seguida.
+     */
+    public void loadBodies(BodyStore store) {
+        int n = bodies.size();
+        synchronized (store) {
+            store.beginBulkLoad(n);
+            System.arraycopy(bodies.ids, 0, store.ids, 0, n);
+            System.arraycopy(bodies.posX, 0, store.posX, 0, n);
+            System.arraycopy(bodies.posY, 0, store.posY, 0, n);
+            System.arraycopy(bodies.velX, 0, store.velX, 0, n);
+            System.arraycopy(bodies.velY, 0, store.velY, 0, n);
+            System.arraycopy(bodies.width, 0, store.width, 0, n);
+            System.arraycopy(bodies.height, 0, store.height, 0, n);
+            System.arraycopy(bodies.mass, 0, store.mass, 0, n);
+            System.arraycopy(bodies.friction, 0, store.friction, 0, n);
+            store.endBulkLoad(n);
+
+            for (int i = 0; i < n; i++) {
+                PhysicsObject source = bodies.getAt(i);
+                PhysicsObject target = store.getAt(i);
+                if (source.isPlatform()) target.setAsPlatform(true);
+                if (source.isBullet()) target.setBullet(true);
+                if (source.getShape() != null) target.setShape(source.getShape());
+            }
+        }
+    }
+
+    // Tamanho exato do arquivo, para alocar o buffer de escrita uma única vez
+    private int measure(BodyStore store) {
+        int n = store.size();
+        int size = 16 + 4 + n * (4 + 8 * 4 + 1) + 4;
+        for (int i = 0; i < n; i++) {
+            Shape shape = store.getAt(i).getShape();
+            if (shape != null) {
+                size += 9 + shape.getVertexCount() * 8;
+            }
+        }
+        size += 4;
+        for (LayerRecord layer : layers) {
+            size += stringSize(layer.name) + 8;
+        }
+        size += 4;
+        for (SpriteRecord sprite : sprites) {
+            size += 4 + stringSize(sprite.layerName) + stringSize(sprite.imagePath) + stringSize(sprite.originPoint) + 17;
+        }
+        size += 4;
+        for (int[] container : containers) {
+            size += 4 + container.length * 4;
+        }
+        size += 4 + followers.size() * 16;
+        return size;
+    }
+
+    private static int countShapes(BodyStore store) {
+        int shapes = 0;
+        for (int i = 0; i < store.size(); i++) {
+            if (store.getAt(i).getShape() != null) {
+                shapes++;
+            }
+        }
+        return shapes;
+    }
+
+    private static void putFloats(ByteBuffer buffer, float[] values, int n) {
+        buffer.asFloatBuffer().put(values, 0, n);
+        buffer.position(buffer.position() + n * 4);
+    }
+
+    private static void getFloats(ByteBuffer buffer, float[] values, int n) {
+        buffer.asFloatBuffer().get(values, 0, n);
+        buffer.position(buffer.position() + n * 4);
+    }
+
+    private static int stringSize(String value) {
+        return 4 + (value == null ? 0 : value.getBytes(UTF_8).length);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
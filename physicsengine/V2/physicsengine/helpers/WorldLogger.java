@@ -0,0 +1,32 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+/**
+ * Destino das mensagens de log do núcleo da simulação. O núcleo não depende do
+ * Android; o PhysicsEngine liga este destino ao android.util.Log, e quem roda a
+ * simulação em uma JVM comum pode usar NONE ou a própria implementação.
+ */
+public interface WorldLogger {
+
+    // Descarta todas as mensagens
+    WorldLogger NONE = new WorldLogger() {
+        @Override
+        public boolean isDebugEnabled() {
+            return false;
+        }
+
+        @Override
+        public void debug(String tag, String message) {
+        }
+
+        @Override
+        public void error(String tag, String message, Throwable error) {
+        }
+    };
+
+    // Permite pular a montagem de mensagens de depuração que seriam descartadas
+    boolean isDebugEnabled();
+
+    void debug(String tag, String message);
+
+    void error(String tag, String message, Throwable error);
+}
@@ -0,0 +1,159 @@
+package com.bosonshiggs.physicsengine.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cópia do estado completo do mundo em um passo: os vetores do BodyStore, o estado
+ * guardado nas visões PhysicsObject, os contêineres, os seguidores e as ações
+ * agendadas por passo. Os vetores são reaproveitados entre capturas; ao capturar de
+ * novo no mesmo buffer, o BodyStore só copia os corpos que podem ter mudado desde a
+ * captura anterior dele (ver BodyStore.capture).
+ */
+public class WorldSnapshot {
+    // Origem e geração da última captura, usadas para pular corpos que não mudaram
+    BodyStore source;
+    int generation;
+    int count = 0;
+
+    // Vetores do BodyStore
+    int[] ids = new int[0];
+    float[] posX = new float[0], posY = new float[0];
+    float[] prevX = new float[0], prevY = new float[0];
+    float[] velX = new float[0], velY = new float[0];
+    float[] width = new float[0], height = new float[0];
+    float[] mass = new float[0], friction = new float[0];
+    float[] forceX = new float[0], forceY = new float[0];
+    boolean[] moved = new boolean[0];
+    boolean[] sleeping = new boolean[0];
+    float[] sleepTime = new float[0];
+
+    // Estado das visões PhysicsObject
+    float[] angularVelocity = new float[0], angularAcceleration = new float[0];
+    boolean[] platform = new boolean[0], onPlatform = new boolean[0], bullet = new boolean[0];
+    Shape[] shape = new Shape[0];
+    boolean[] oscillatingX = new boolean[0], oscillatingY = new boolean[0];
+    float[] amplitudeX = new float[0], amplitudeY = new float[0];
+    float[] frequencyX = new float[0], frequencyY = new float[0];
+    float[] initialX = new float[0], initialY = new float[0];
+    double[] oscillationElapsed = new double[0];
+    float[] offsetX = new float[0], offsetY = new float[0];
+
+    // Estado da engine
+    private long tick;
+    private final TickScheduler scheduled = new TickScheduler();
+    private int[] containerParents = new int[4];
+    private int[] containerChildStart = new int[5];
+    private int[] containerChildren = new int[8];
+    private int containerCount = 0;
+    private final List<FollowInfo> followers = new ArrayList<>();
+
+    public int getBodyCount() {
+        return count;
+    }
+
+    // ID do corpo na posição informada da captura
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public void setTick(long tick) {
+        this.tick = tick;
+    }
+
+    // Cópia das ações agendadas por passo no momento da captura
+    public TickScheduler getScheduled() {
+        return scheduled;
+    }
+
+    public List<FollowInfo> getFollowers() {
+        return followers;
+    }
+
+    public void clearContainers() {
+        containerCount = 0;
+        containerChildStart[0] = 0;
+    }
+
+    // Começa um contêiner; os filhos seguintes adicionados pertencem a ele
+    public void addContainer(int parentId) {
+        if (containerCount + 1 >= containerChildStart.length) {
+            containerParents = Arrays.copyOf(containerParents, containerChildStart.length * 2);
+            containerChildStart = Arrays.copyOf(containerChildStart, containerChildStart.length * 2 + 1);
+        }
+        containerParents[containerCount] = parentId;
+        containerChildStart[containerCount + 1] = containerChildStart[containerCount];
+        containerCount++;
+    }
+
+    public void addContainerChild(int childId) {
+        int end = containerChildStart[containerCount];
+        if (end == containerChildren.length) {
+            containerChildren = Arrays.copyOf(containerChildren, end * 2);
+        }
+        containerChildren[end] = childId;
+        containerChildStart[containerCount]++;
+    }
+
+    public int getContainerCount() {
+        return containerCount;
+    }
+
+    public int getContainerParent(int index) {
+        return containerParents[index];
+    }
+
+    public int getContainerChildCount(int index) {
+        return containerChildStart[index + 1] - containerChildStart[index];
+    }
+
+    public int getContainerChild(int index, int child) {
+        return containerChildren[containerChildStart[index] + child];
+    }
+
+    void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(required, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        prevX = Arrays.copyOf(prevX, capacity);
+        prevY = Arrays.copyOf(prevY, capacity);
+        velX = Arrays.copyOf(velX, capacity);
+        velY = Arrays.copyOf(velY, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        mass = Arrays.copyOf(mass, capacity);
+        friction = Arrays.copyOf(friction, capacity);
+        forceX = Arrays.copyOf(forceX, capacity);
+        forceY = Arrays.copyOf(forceY, capacity);
+        moved = Arrays.copyOf(moved, capacity);
+        sleeping = Arrays.copyOf(sleeping, capacity);
+        sleepTime = Arrays.copyOf(sleepTime, capacity);
+
+        angularVelocity = Arrays.copyOf(angularVelocity, capacity);
+        angularAcceleration = Arrays.copyOf(angularAcceleration, capacity);
+        platform = Arrays.copyOf(platform, capacity);
+        onPlatform = Arrays.copyOf(onPlatform, capacity);
+        bullet = Arrays.copyOf(bullet, capacity);
+        shape = Arrays.copyOf(shape, capacity);
+        oscillatingX = Arrays.copyOf(oscillatingX, capacity);
+        oscillatingY = Arrays.copyOf(oscillatingY, capacity);
+        amplitudeX = Arrays.copyOf(amplitudeX, capacity);
+        amplitudeY = Arrays.copyOf(amplitudeY, capacity);
+        frequencyX = Arrays.copyOf(frequencyX, capacity);
+        frequencyY = Arrays.copyOf(frequencyY, capacity);
+        initialX = Arrays.copyOf(initialX, capacity);
+        initialY = Arrays.copyOf(initialY, capacity);
+        oscillationElapsed = Arrays.copyOf(oscillationElapsed, capacity);
+        offsetX = Arrays.copyOf(offsetX, capacity);
+        offsetY = Arrays.copyOf(offsetY, capacity);
+    }
+}